@@ -1,19 +1,64 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
 
 /**
- * This button class represents a space on the game board for which players to
- * move across.
+ * This class plays the moves of player 2. Moves come from the opening book
+ * when it has the position, and otherwise from an alpha-beta Search, which
+ * can run on several threads sharing one transposition table and use an
+ * endgame database and tuned evaluation weights. Searches started by
+ * moveLater run on a background thread so the window keeps responding, and
+ * during the player's turn the AI can ponder on the reply it expects.
  * @author Michael Washburn <mdw@michaelwashburn.com>
  *
  */
 public class AI {
 	
+	/* default number of plies the AI looks ahead */
+	public static final int DEFAULT_DEPTH = 20;
+	
+	/* default number of milliseconds the AI may think about a move */
+	public static final long DEFAULT_TIME = 500;
+	
+	/* default size of the transposition table in megabytes */
+	public static final int DEFAULT_HASH = 16;
+	
 	private GameModel model;
 	
-	private ArrayList<Cell> occupied;
+	private Search search;
+	private int depth;//most plies to look ahead
+	private long timeBudget;//milliseconds allowed per move, 0 for no limit
+	private int hashSize;//megabytes used by the transposition table
+	private Tablebase tablebase;//endgame database, null if there is none
+	private OpeningBook book;//opening book, null if there is none
+	private long[] bookMoves;//buffer the book's move is checked with
+	private Evaluation evaluation;//weights positions are scored with
+	
+	private int threads;//number of threads searching each move
+	private Search[] helpers;//searches run on other threads alongside the main one
+	private ExecutorService pool;//runs the helpers
+	private long nodes;//positions visited by every thread during the last move
+	private boolean searched;//if the last move came from a search rather than the book
+	private SearchStats stats;//statistics of every move chosen
+	private boolean log;//if a line is printed for every move chosen
+	
+	private ExecutorService thinker;//runs searches started by moveLater off the event thread
+	private volatile int generation;//changed by cancel so a cancelled search's move is thrown away
+	private volatile boolean thinking;//if a search started by moveLater has not been played yet
+	
+	private boolean ponder;//if the AI searches during the player's turn
+	private long ponderKey;//key of the position pondered, the expected reply already played
+	private long ponderMove;//best move found while pondering, Move.NONE if none
+	private long ponderNanos;//time spent pondering
+	private boolean pondered;//if pondering finished without being stopped
 
 	
 	/**
@@ -21,68 +66,306 @@ public class AI {
 	 * @param model
 	 */
 	public AI(GameModel model){
-		this.occupied = new ArrayList<Cell>();
+		this(model, DEFAULT_DEPTH);
+	}
+	
+	/**
+	 * Construct a new instance of this class that searches to the given depth
+	 * @param model
+	 * @param depth
+	 */
+	public AI(GameModel model, int depth){
+		this(model, depth, openTablebase(), openBook(), loadEvaluation());
+	}
+	
+	/**
+	 * Construct a new instance of this class that uses the given endgame
+	 * database, opening book and weights instead of reading the default files.
+	 * The database and book are only read from, so several AIs can share them.
+	 * @param model
+	 * @param depth
+	 * @param tablebase endgame database, null for none
+	 * @param book opening book, null for none
+	 * @param evaluation
+	 */
+	public AI(GameModel model, int depth, Tablebase tablebase, OpeningBook book, Evaluation evaluation){
 		this.model = model;
+		this.search = new Search();
+		this.depth = depth;
+		this.timeBudget = DEFAULT_TIME;
+		this.hashSize = DEFAULT_HASH;
+		this.threads = 1;
+		this.helpers = new Search[0];
+		this.ponder = true;
+		this.stats = new SearchStats();
+		this.bookMoves = new long[Bitboard.MAX_MOVES];
+		setTablebase(tablebase);
+		setEvaluation(evaluation);
+		this.book = book;
 	}
 	
 	/**
-	 * Update this objects data structures to reflect the current board
+	 * @return the endgame database in the default file, null if none has been built
 	 */
-	private void update(){
-		occupied = new ArrayList<Cell>();
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				if ((model.get(r,c) != null) && (model.get(r,c).get() == 2)){
-					occupied.add(new Cell(r,c));
-				}
+	static Tablebase openTablebase(){
+		if (new File(Tablebase.DEFAULT_FILE).isFile()){
+			try{
+				return new Tablebase(Tablebase.DEFAULT_FILE);
+			}
+			catch (IOException e){
+				System.err.println("Could not open " + Tablebase.DEFAULT_FILE + ": " + e.getMessage());
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the opening book in the default file, null if none has been built
+	 */
+	static OpeningBook openBook(){
+		if (new File(OpeningBook.DEFAULT_FILE).isFile()){
+			try{
+				return new OpeningBook(OpeningBook.DEFAULT_FILE);
 			}
+			catch (IOException e){
+				System.err.println("Could not open " + OpeningBook.DEFAULT_FILE + ": " + e.getMessage());
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the weights tuned by Tuner in the default file, the default
+	 * weights if there are none
+	 */
+	static Evaluation loadEvaluation(){
+		if (new File(Evaluation.DEFAULT_FILE).isFile()){
+			try{
+				return Evaluation.load(Evaluation.DEFAULT_FILE);
+			}
+			catch (IOException e){
+				System.err.println("Could not read " + Evaluation.DEFAULT_FILE + ": " + e.getMessage());
+			}
+		}
+		return new Evaluation();
+	}
+	
+	/**
+	 * @return the number of plies this AI looks ahead
+	 */
+	public int getDepth(){
+		return depth;
+	}
+	
+	/**
+	 * Set how many plies this AI looks ahead. Deeper is stronger but slower.
+	 * @param depth
+	 */
+	public void setDepth(int depth){
+		this.depth = depth;
+	}
+	
+	/**
+	 * @return the number of milliseconds this AI may think about a move
+	 */
+	public long getTimeBudget(){
+		return timeBudget;
+	}
+	
+	/**
+	 * Set how many milliseconds this AI may think about a move. The search
+	 * stops when this runs out and plays the best move of the deepest completed
+	 * iteration. 0 searches to the full depth no matter how long it takes.
+	 * @param millis
+	 */
+	public void setTimeBudget(long millis){
+		this.timeBudget = millis;
+	}
+	
+	/**
+	 * @return the number of megabytes used by the transposition table
+	 */
+	public int getHashSize(){
+		return hashSize;
+	}
+	
+	/**
+	 * Set how many megabytes the transposition table may use.
+	 * The table is built again, forgetting every stored position.
+	 * @param megabytes
+	 */
+	public void setHashSize(int megabytes){
+		this.hashSize = megabytes;
+		search.setTable(null);
+		for (int i = 0; i < helpers.length; i++){
+			helpers[i].setTable(null);
+		}
+	}
+	
+	/**
+	 * @return the transposition table, built the first time it is needed.
+	 * Every thread searching for this AI shares it.
+	 */
+	public TranspositionTable getTable(){
+		if (search.getTable() == null){
+			search.setTable(new TranspositionTable(hashSize));
+		}
+		for (int i = 0; i < helpers.length; i++){
+			helpers[i].setTable(search.getTable());
+		}
+		return search.getTable();
+	}
+	
+	/**
+	 * @return the endgame database, null if there is none
+	 */
+	public Tablebase getTablebase(){
+		return tablebase;
+	}
+	
+	/**
+	 * Set the endgame database every thread looks positions up in, null for none.
+	 * @param tablebase
+	 */
+	public void setTablebase(Tablebase tablebase){
+		this.tablebase = tablebase;
+		search.setTablebase(tablebase);
+		for (int i = 0; i < helpers.length; i++){
+			helpers[i].setTablebase(tablebase);
+		}
+	}
+	
+	/**
+	 * @return the weights positions are scored with
+	 */
+	public Evaluation getEvaluation(){
+		return evaluation;
+	}
+	
+	/**
+	 * Set the weights every thread scores positions with.
+	 * @param evaluation
+	 */
+	public void setEvaluation(Evaluation evaluation){
+		this.evaluation = evaluation;
+		search.setEvaluation(evaluation);
+		for (int i = 0; i < helpers.length; i++){
+			helpers[i].setEvaluation(evaluation);
+		}
+	}
+	
+	/**
+	 * @return the opening book, null if there is none
+	 */
+	public OpeningBook getBook(){
+		return book;
+	}
+	
+	/**
+	 * Set the opening book moves are looked up in before searching, null for none.
+	 * @param book
+	 */
+	public void setBook(OpeningBook book){
+		this.book = book;
+	}
+	
+	/**
+	 * @return true if the AI searches during the player's turn
+	 */
+	public boolean getPonder(){
+		return ponder;
+	}
+	
+	/**
+	 * Set whether the AI keeps searching during the player's turn. After each
+	 * move made by moveLater the AI guesses the player's reply from the
+	 * principal variation and searches the position after it until the player
+	 * commits. If the guess was right the move found is played at once, or
+	 * the search goes on from the warm transposition table for the rest of the
+	 * time budget. If it was wrong the table still holds much of the tree.
+	 * @param ponder
+	 */
+	public void setPonder(boolean ponder){
+		this.ponder = ponder;
+	}
+	
+	/**
+	 * @return the number of threads searching each move
+	 */
+	public int getThreads(){
+		return threads;
+	}
+	
+	/**
+	 * Set how many threads search each move. With more than one thread the
+	 * extra threads search the same position at the same time, sharing the
+	 * transposition table, so each one finds the results of the others and the
+	 * main search gets deeper in the same time. With one thread the AI always
+	 * plays the same move in the same situation.
+	 * @param threads
+	 */
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+		if (pool != null){
+			pool.shutdownNow();
+			pool = null;
+		}
+		helpers = new Search[this.threads - 1];
+		for (int i = 0; i < helpers.length; i++){
+			helpers[i] = new Search(search.getTable());
+			helpers[i].setHelper(i + 1);
+			helpers[i].setTablebase(tablebase);
+			helpers[i].setEvaluation(evaluation);
 		}
 	}
 	
+	/**
+	 * @return the number of positions visited by every thread during the last move
+	 */
+	public long getNodes(){
+		return nodes;
+	}
+	
+	/**
+	 * @return the statistics of every move this AI has chosen
+	 */
+	public SearchStats getStats(){
+		return stats;
+	}
+	
+	/**
+	 * Set the statistics moves are added to, so several AIs can share one.
+	 * @param stats
+	 */
+	public void setStats(SearchStats stats){
+		this.stats = stats;
+	}
+	
+	/**
+	 * Set whether a line with the statistics of each move is printed to
+	 * System.err as it is chosen.
+	 * @param log
+	 */
+	public void setLog(boolean log){
+		this.log = log;
+	}
+	
+	/**
+	 * @return the search used to pick moves, holding statistics of the last move
+	 */
+	public Search getSearch(){
+		return search;
+	}
+	
 	/**
 	 * Return to the user how many pieces are in danger of being captured on
-	 * the given board configuration
+	 * the given board configuration. The board works this out from its masks
+	 * without looking at each square.
 	 * @param config
 	 * @return
 	 */
-	private int inDanger(GameModel config){
-		int danger = 0;
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				if (config.isOccupied(r, c) && (config.get(r, c).get() == 2)){
-					//check sides of this square for opponents and check if they can jump you
-					if ((config.isOccupied(r+1,c+1)) && (config.get(r+1, c+1).get() == 1)){
-						if (((r-1 >= 0) && (r-1 < 8) && (c-1 >= 0) && (c-1 < 8))){
-							if (config.get(r-1, c-1) == null){
-								danger++;
-							}
-						}
-					}
-					if (config.isOccupied(r-1,c-1) && config.get(r-1, c-1).get() == 1){
-						if (((r+1 >= 0) && (r+1 < 8) && (c+1 >= 0) && (c+1 < 8))){
-							if (config.get(r+1, c+1) == null){
-								danger++;
-							}
-						}
-					}
-					if (config.isOccupied(r+1,c-1) && config.get(r+1, c-1).get() == 1){
-						if (((r-1 >= 0) && (r-1 < 8) && (c+1 >= 0) && (c+1 < 8))){
-							if (config.get(r-1, c+1) == null){
-								danger++;
-							}
-						}
-					}
-					if (config.isOccupied(r-1,c+1) && config.get(r-1, c+1).get() == 1){
-						if (((r+1 >= 0) && (r+1 < 8) && (c-1 >= 0) && (c-1 < 8))){
-							if (config.get(r+1, c-1) == null){
-								danger++;
-							}
-						}
-					}
-				}
-			}
-		}
-		return danger;
+	int inDanger(GameModel config){
+		return config.getBoard().danger(2);
 	}
 	
 	/**
@@ -90,34 +373,273 @@ public class AI {
 	 * Priorities highest to lowest:
 	 * Boards where opponents lose pieces
 	 * Boards where we lose pieces shouldn't be taken.
+	 * Each configuration is scored once and configurations with equal scores
+	 * keep their order.
 	 * @param configs
 	 */
 	public void sort(ArrayList<GameModel> configs){
+		//pack each score above its index so sorting the longs sorts the configurations
+		long[] keys = new long[configs.size()];
 		for (int i = 0; i < configs.size(); i++){
-			for (int k = 0; k < configs.size(); k++){
-				if (configs.get(i).p1Pieces() < configs.get(k).p1Pieces()){
-					Collections.swap(configs, i, k);
+			GameModel config = configs.get(i);
+			long score = (config.p1Pieces() * 1024L) + inDanger(config);
+			keys[i] = (score << 32) | i;
+		}
+		Arrays.sort(keys);
+		ArrayList<GameModel> sorted = new ArrayList<GameModel>(configs.size());
+		for (int i = 0; i < keys.length; i++){
+			sorted.add(configs.get((int) keys[i]));
+		}
+		for (int i = 0; i < sorted.size(); i++){
+			configs.set(i, sorted.get(i));
+		}
+	}
+	
+	/**
+	 * Search for the best move the given player can make on the given board.
+	 * Positions in the opening book are played from the book without searching.
+	 * The board is not changed.
+	 * @param board
+	 * @param id
+	 * @return the best move or Move.NONE if the player can not move
+	 */
+	public long bestMove(Bitboard board, int id){
+		long start = System.nanoTime();
+		long bytes = SearchStats.allocatedBytes();
+		long best = bestMove(board, id, timeBudget);
+		record(best, start, bytes);
+		return best;
+	}
+	
+	/**
+	 * Add a move just chosen to the statistics, and print it if logging.
+	 * @param move
+	 * @param start System.nanoTime() when choosing the move started
+	 * @param bytes bytes allocated by this thread when choosing the move started
+	 */
+	private void record(long move, long start, long bytes){
+		//the line comes back from record, as other games may share the statistics
+		String line = stats.record(System.nanoTime() - start, nodes, SearchStats.allocatedBytes() - bytes,
+				searched ? search : null);
+		if (log){
+			System.err.println("AI move " + ((move == Move.NONE) ? "none" : Move.toString(move))
+					+ (searched ? ": " : " from the book: ") + line);
+		}
+	}
+	
+	/**
+	 * Search for the best move with the given time budget.
+	 * @param board
+	 * @param id
+	 * @param millis time budget, 0 for no limit
+	 * @return the best move or Move.NONE if the player can not move
+	 */
+	private long bestMove(final Bitboard board, final int id, long millis){
+		if (book != null){
+			long move = book.probe(board, id, bookMoves);
+			if (move != Move.NONE){
+				nodes = 0;
+				searched = false;
+				return move;
+			}
+		}
+		searched = true;
+		getTable().newSearch();
+		if (helpers.length == 0){
+			long best = search.search(board, id, depth, millis);
+			nodes = search.getNodes();
+			return best;
+		}
+		if (pool == null){
+			pool = Executors.newFixedThreadPool(helpers.length, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "AI helper");
+					thread.setDaemon(true);
+					return thread;
 				}
-				else if (inDanger(configs.get(i)) < inDanger(configs.get(k))){
-					Collections.swap(configs, i, k);
+			});
+		}
+		//start the helpers, they run until the main search is done
+		ArrayList<Future<?>> running = new ArrayList<Future<?>>();
+		for (int i = 0; i < helpers.length; i++){
+			final Search helper = helpers[i];
+			running.add(pool.submit(new Runnable(){
+				@Override
+				public void run() {
+					helper.search(board, id, depth, 0);
 				}
+			}));
+		}
+		long best = search.search(board, id, depth, millis);
+		int bestDepth = search.getDepthReached();
+		nodes = search.getNodes();
+		for (int i = 0; i < helpers.length; i++){
+			helpers[i].stop();
+		}
+		for (int i = 0; i < helpers.length; i++){
+			try{
+				running.get(i).get();
+			}
+			catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e){
+				throw new IllegalStateException(e.getCause());
+			}
+			helpers[i].resume();
+			nodes += helpers[i].getNodes();
+			//a helper that finished a deeper search has the better move
+			long[] line = helpers[i].getLine();
+			if ((helpers[i].getDepthReached() > bestDepth) && (line.length > 0)){
+				best = line[0];
+				bestDepth = helpers[i].getDepthReached();
 			}
 		}
+		return best;
 	}
 	
 	/**
-	 * make a move by finding the best possible nextMove for the current board.
+	 * make a move by searching for the best possible nextMove for the current board.
 	 */
 	public void move(){
-		update();
-		HashMap<Cell,Disc> copy = model.copyBoard(model.getBoard());
-		ArrayList<GameModel> neighbors = model.getNeighbors(model);
-		sort(neighbors);
-		if (neighbors.size() > 0){
-			model.moves.addFirst(copy);
-			model.setBoard(neighbors.get(0).getBoard());
+		long best = bestMove(model.getBoard(), 2);
+		if (best != Move.NONE){
+			model.play(best);
 		}
 		
 	}
+	
+	/**
+	 * Search for a move on a background thread so the window keeps
+	 * responding while the AI thinks. Must be called on the Swing event
+	 * thread. The move is played on the event thread when it is found and
+	 * then done is run, unless cancel was called first.
+	 * @param done run on the event thread after the move is played
+	 */
+	public void moveLater(final Runnable done){
+		final Bitboard board = model.copyBoard(model.getBoard());
+		//stop pondering, the result is kept for the search below
+		generation++;
+		search.stop();
+		final int started = generation;
+		thinking = true;
+		if (thinker == null){
+			thinker = Executors.newSingleThreadExecutor(new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "AI");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		thinker.submit(new Runnable(){
+			@Override
+			public void run() {
+				//resume before checking so a cancel after the check still stops the search
+				search.resume();
+				if (started != generation){
+					return;
+				}
+				long start = System.nanoTime();
+				long bytes = SearchStats.allocatedBytes();
+				final long best = ponderedMove(board);
+				record(best, start, bytes);
+				//the reply expected to the move, from the principal variation
+				long[] line = search.getLine();
+				final long reply = ((line.length > 1) && (line[0] == best)) ? line[1] : Move.NONE;
+				SwingUtilities.invokeLater(new Runnable(){
+					@Override
+					public void run() {
+						if (started != generation){
+							return;
+						}
+						thinking = false;
+						if (best != Move.NONE){
+							model.play(best);
+						}
+						done.run();
+						if (ponder && (reply != Move.NONE)){
+							ponder(reply);
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Find the move for player 2 on the given board, using the result of
+	 * pondering if it was searching the same position. Runs on the thinking
+	 * thread.
+	 * @param board
+	 * @return the best move or Move.NONE if the player can not move
+	 */
+	private long ponderedMove(Bitboard board){
+		long key = board.getKey() ^ Bitboard.SIDE;
+		if ((ponderKey != key) || (ponderMove == Move.NONE)){
+			return bestMove(board, 2, timeBudget);
+		}
+		ponderKey = 0;
+		long spent = ponderNanos / 1000000L;
+		if (pondered || ((timeBudget > 0) && (spent >= timeBudget))){
+			nodes = search.getNodes();
+			searched = true;
+			return ponderMove;
+		}
+		//the table is warm, so only the rest of the time is needed
+		return bestMove(board, 2, (timeBudget > 0) ? timeBudget - spent : 0);
+	}
+	
+	/**
+	 * Search on the thinking thread, until the next call to moveLater or
+	 * cancel, the position reached if the player replies with the given move.
+	 * Must be called on the Swing event thread.
+	 * @param reply
+	 */
+	private void ponder(long reply){
+		final Bitboard board = model.copyBoard(model.getBoard());
+		board.makeMove(reply);
+		final int started = generation;
+		thinker.submit(new Runnable(){
+			@Override
+			public void run() {
+				search.resume();
+				if (started != generation){
+					return;
+				}
+				ponderKey = board.getKey() ^ Bitboard.SIDE;
+				ponderMove = Move.NONE;
+				long start = System.nanoTime();
+				getTable().newSearch();
+				ponderMove = search.search(board, 2, depth, 0);
+				ponderNanos = System.nanoTime() - start;
+				//a stop only comes with a change of generation
+				pondered = started == generation;
+			}
+		});
+	}
+	
+	/**
+	 * Stop the search started by moveLater, if there is one, and throw its
+	 * move away. Pondering is stopped too. Must be called on the Swing event
+	 * thread.
+	 * @return true if a search was stopped
+	 */
+	public boolean cancel(){
+		generation++;
+		search.stop();
+		boolean stopped = thinking;
+		thinking = false;
+		return stopped;
+	}
+	
+	/**
+	 * @return true while a search started by moveLater has not been played
+	 */
+	public boolean isThinking(){
+		return thinking;
+	}
 		
 }
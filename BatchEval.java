@@ -0,0 +1,211 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class scores a file of positions, one per line, without building a
+ * GameModel for each. Each line holds a board in the format of
+ * Bitboard.parse and the player to move, for example
+ * "bbbb/bbbb/..../..../..../..../rrrr/rrrr 1", or a position written as FEN,
+ * which holds the player to move itself. Positions are searched on a
+ * pool of threads, each reusing one Search, and the results are written in
+ * the order the positions were read. Only a few positions per thread are read
+ * ahead of the one being written, so memory stays the same however large the
+ * file is.
+ * Each output line holds the position, the score for the player to move, the
+ * best move, the depth reached and the positions searched. At depth 0 the
+ * score is the evaluation of the position and no move is given.
+ * Run with: java BatchEval [-depth n] [-nodes n] [-hash mb] [-threads n] [-weights file] [-in file] [-out file]
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class BatchEval {
+
+	/* positions read ahead for each thread */
+	private static final int READ_AHEAD = 4;
+
+	private int depth;
+	private long nodeLimit;//most positions searched for each line, 0 for no limit
+	private int hashSize;//megabytes of transposition table for each thread
+	private Evaluation evaluation;//weights positions are scored with
+	private ThreadLocal<Search> searches;//search reused by each thread
+
+	/**
+	 * Construct a new batch evaluator.
+	 * @param depth depth to search each position to, 0 to only evaluate it
+	 * @param nodeLimit most positions searched for each line, 0 for no limit
+	 * @param hashSize megabytes of transposition table for each thread
+	 * @param evaluation weights positions are scored with
+	 */
+	public BatchEval(int depth, long nodeLimit, int hashSize, Evaluation evaluation){
+		this.depth = depth;
+		this.nodeLimit = nodeLimit;
+		this.hashSize = hashSize;
+		this.evaluation = evaluation;
+		this.searches = new ThreadLocal<Search>(){
+			@Override
+			protected Search initialValue(){
+				Search search = new Search(new TranspositionTable(BatchEval.this.hashSize));
+				search.setNodeLimit(BatchEval.this.nodeLimit);
+				search.setEvaluation(BatchEval.this.evaluation);
+				return search;
+			}
+		};
+	}
+
+	/**
+	 * Score one line of input on the calling thread.
+	 * @param line
+	 * @return the line to write out
+	 */
+	public String evaluate(String line){
+		String[] fields = line.trim().split("\\s+");
+		boolean fen = fields[0].indexOf(':') >= 0;
+		if (!fen && (fields.length < 2)){
+			return line + " error: expected a board and the player to move";
+		}
+		Bitboard board;
+		int id;
+		try{
+			if (fen){
+				board = Notation.parseFEN(fields[0]);
+				id = Notation.fenSide(fields[0]);
+			}
+			else{
+				board = Bitboard.parse(fields[0]);
+				id = Integer.parseInt(fields[1]);
+			}
+		}
+		catch (IllegalArgumentException e){
+			return line + " error: " + e.getMessage();
+		}
+		if ((id != 1) && (id != 2)){
+			return line + " error: the player to move must be 1 or 2";
+		}
+		Search search = searches.get();
+		if (depth == 0){
+			return fields[0] + " " + id + " " + search.evaluate(board, id) + " - 0 0";
+		}
+		search.getTable().newSearch();
+		long move = search.search(board, id, depth, 0);
+		return fields[0] + " " + id + " " + search.getScore() + " "
+				+ ((move == Move.NONE) ? "-" : Move.toString(move)) + " "
+				+ search.getDepthReached() + " " + search.getNodes();
+	}
+
+	/**
+	 * Score every line read on the given number of threads, writing the
+	 * results in the order they were read.
+	 * @param in
+	 * @param out
+	 * @param threads
+	 * @return the number of lines scored
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long run(BufferedReader in, Writer out, int threads) throws IOException, InterruptedException{
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+		long count = 0;
+		try{
+			String line;
+			while ((line = in.readLine()) != null){
+				if (line.trim().length() == 0){
+					continue;
+				}
+				//write the oldest result before reading further ahead
+				if (pending.size() >= threads * READ_AHEAD){
+					out.write(pending.poll().get());
+					out.write('\n');
+				}
+				final String position = line;
+				pending.add(pool.submit(new Callable<String>(){
+					@Override
+					public String call(){
+						return evaluate(position);
+					}
+				}));
+				count++;
+			}
+			while (!pending.isEmpty()){
+				out.write(pending.poll().get());
+				out.write('\n');
+			}
+			out.flush();
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException(e.getCause());
+		}
+		finally{
+			pool.shutdownNow();
+		}
+		return count;
+	}
+
+	/**
+	 * Score a file of positions from the command line.
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException{
+		int depth = 8;
+		long nodes = 0;
+		int hash = 4;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String inPath = null;
+		String outPath = null;
+		Evaluation evaluation = new Evaluation();
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-depth")){
+				depth = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-nodes")){
+				nodes = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-hash")){
+				hash = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-threads")){
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-weights")){
+				evaluation = Evaluation.load(args[++i]);
+			}
+			else if (args[i].equals("-in")){
+				inPath = args[++i];
+			}
+			else if (args[i].equals("-out")){
+				outPath = args[++i];
+			}
+		}
+		Reader reader = (inPath == null) ? new InputStreamReader(System.in) : new FileReader(inPath);
+		Writer writer = (outPath == null) ? new OutputStreamWriter(System.out) : new FileWriter(outPath);
+		BufferedReader in = new BufferedReader(reader);
+		BufferedWriter out = new BufferedWriter(writer);
+		long start = System.nanoTime();
+		long count;
+		try{
+			count = new BatchEval(depth, nodes, hash, evaluation).run(in, out, threads);
+		}
+		finally{
+			in.close();
+			out.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.println(String.format("%d positions in %.2fs (%.1f positions/s)", count, seconds, count / seconds));
+	}
+
+}
@@ -0,0 +1,389 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class measures how fast the model and AI hot paths run on a fixed set
+ * of opening, middlegame and endgame positions, so changes made for speed can
+ * be compared against a baseline. Each benchmark is warmed up and then timed
+ * over several iterations, reporting operations per second and the bytes
+ * allocated per operation (the same numbers JMH reports as thrpt and
+ * gc.alloc.rate.norm). It is a small harness of its own rather than JMH:
+ * every benchmark runs in the same JVM without forking, and results are only
+ * kept from being optimized away by adding them to a volatile field, so the
+ * numbers are for comparing runs on the same machine. The AI is built without an endgame database, an
+ * opening book or tuned weights, whatever files are in the working directory.
+ * With -scaling the time AI.bestMove takes to reach a depth is measured
+ * instead, on 1, 2, 4 and 8 threads, to check how the helper threads scale.
+ * Run with: java Benchmark [-w warmups] [-i iterations] [-t millis] [name filter]
+ * or: java Benchmark -scaling depth [-i iterations]
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Benchmark {
+
+	/* names of the positions every benchmark is run on */
+	public static final String[] POSITION_NAMES = {"opening", "middlegame", "endgame"};
+
+	/* the positions every benchmark is run on, in the format of Bitboard.parse */
+	public static final String[] POSITIONS = {
+		"bbbb/bbbb/..../..../..../..../rrrr/rrrr",
+		"b.bb/bb.b/.b../..r./.r../r..r/r.rr/rr.r",
+		"..../..B./..../.b../..../.R../r.../....",
+	};
+
+	/* depth AI.move searches to, fixed so runs can be compared */
+	private static final int AI_DEPTH = 6;
+
+	/* thread counts the scaling run compares */
+	private static final int[] SCALING_THREADS = {1, 2, 4, 8};
+
+	/* results are added here so the work can not be optimized away */
+	private static volatile long sink;
+
+	private int warmups;
+	private int iterations;
+	private long millis;//length of each iteration
+
+	/**
+	 * Construct a new benchmark run.
+	 * @param warmups iterations run before measuring
+	 * @param iterations iterations measured
+	 * @param millis length of each iteration
+	 */
+	public Benchmark(int warmups, int iterations, long millis){
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.millis = millis;
+	}
+
+	/**
+	 * One operation to measure. It is made once and set up again for every
+	 * position.
+	 */
+	abstract static class Bench{
+		String name;
+		GameModel model;
+
+		Bench(String name){
+			this.name = name;
+			this.model = new GameModel(false);
+			//no tablebase, book or tuned weights, so runs do not depend on the files in the working directory
+			model.ai = new AI(model, AI_DEPTH, null, null, new Evaluation());
+		}
+
+		/**
+		 * Prepare to run on the given position.
+		 * @param position
+		 * @return false if this benchmark can not run on the position
+		 */
+		boolean setUp(Bitboard position){
+			model.setBoard(new Bitboard(position));
+			return true;
+		}
+
+		/**
+		 * Run the operation once.
+		 * @return a value depending on the work done
+		 */
+		abstract long run();
+	}
+
+	/**
+	 * @return every benchmark
+	 */
+	static ArrayList<Bench> benches(){
+		ArrayList<Bench> benches = new ArrayList<Bench>();
+		benches.add(new Bench("GameModel.copyBoard"){
+			@Override
+			long run(){
+				return model.copyBoard(model.getBoard()).hashCode();
+			}
+		});
+		benches.add(new Bench("GameModel.getNeighbors"){
+			@Override
+			long run(){
+				return model.getNeighbors(model).size();
+			}
+		});
+		benches.add(new Bench("GameModel.cellNeighbors"){
+			@Override
+			long run(){
+				long total = 0;
+				for (int r = 0; r < 8; r++){
+					for (int c = 0; c < 8; c++){
+						total += model.cellNeighbors(model, r, c).size();
+					}
+				}
+				return total;
+			}
+		});
+		benches.add(new Bench("GameModel.simpleMove"){
+			int r1, c1, r2, c2;
+			Disc disc;
+			@Override
+			boolean setUp(Bitboard position){
+				super.setUp(position);
+				long move = firstMove(position, false);
+				if (move == Move.NONE){
+					return false;
+				}
+				r1 = Bitboard.row(Move.from(move));
+				c1 = Bitboard.col(Move.from(move));
+				r2 = Bitboard.row(Move.to(move));
+				c2 = Bitboard.col(Move.to(move));
+				disc = model.get(r1, c1);
+				return true;
+			}
+			@Override
+			long run(){
+				boolean moved = model.simpleMove(model, 2, r1, c1, r2, c2);
+				model.set(r2, c2, null);
+				model.set(r1, c1, disc);
+				return moved ? 1 : 0;
+			}
+		});
+		benches.add(new Bench("GameModel.simpleJump"){
+			int r1, c1, r2, c2;
+			Disc disc, captured;
+			@Override
+			boolean setUp(Bitboard position){
+				super.setUp(position);
+				long move = firstMove(position, true);
+				if (move == Move.NONE){
+					return false;
+				}
+				r1 = Bitboard.row(Move.from(move));
+				c1 = Bitboard.col(Move.from(move));
+				r2 = Bitboard.row(Move.to(move));
+				c2 = Bitboard.col(Move.to(move));
+				disc = model.get(r1, c1);
+				captured = model.get((r1 + r2) / 2, (c1 + c2) / 2);
+				return true;
+			}
+			@Override
+			long run(){
+				boolean moved = model.simpleJump(model, 2, r1, c1, r2, c2);
+				model.set(r2, c2, null);
+				model.set((r1 + r2) / 2, (c1 + c2) / 2, captured);
+				model.set(r1, c1, disc);
+				return moved ? 1 : 0;
+			}
+		});
+		benches.add(new Bench("AI.inDanger"){
+			@Override
+			long run(){
+				return model.ai.inDanger(model);
+			}
+		});
+		benches.add(new Bench("AI.sort"){
+			ArrayList<GameModel> neighbors;
+			@Override
+			boolean setUp(Bitboard position){
+				super.setUp(position);
+				neighbors = model.getNeighbors(model);
+				return true;
+			}
+			@Override
+			long run(){
+				ArrayList<GameModel> configs = new ArrayList<GameModel>(neighbors);
+				model.ai.sort(configs);
+				return configs.size();
+			}
+		});
+		benches.add(new Bench("AI.move"){
+			Bitboard start;
+			@Override
+			boolean setUp(Bitboard position){
+				super.setUp(position);
+				start = position;
+				model.ai.setDepth(AI_DEPTH);
+				model.ai.setTimeBudget(0);
+				//a small table is cleared before every move so each one is searched from scratch
+				model.ai.setHashSize(1);
+				return true;
+			}
+			@Override
+			long run(){
+				model.ai.getTable().clear();
+				model.setBoard(new Bitboard(start));
+				model.ai.move();
+				return model.getBoard().hashCode();
+			}
+		});
+		return benches;
+	}
+
+	/**
+	 * Find the first simple move or jump player 2 can make on a board.
+	 * @param position
+	 * @param jump
+	 * @return the move or Move.NONE if there is none
+	 */
+	static long firstMove(Bitboard position, boolean jump){
+		long[] moves = new long[Bitboard.MAX_MOVES];
+		int count = position.generate(2, moves, 0);
+		for (int i = 0; i < count; i++){
+			if (Move.isCapture(moves[i]) == jump){
+				return moves[i];
+			}
+		}
+		return Move.NONE;
+	}
+
+	/**
+	 * Run one benchmark on one position and print its result.
+	 * @param bench
+	 * @param positionName
+	 */
+	void measure(Bench bench, String positionName){
+		long total = 0;
+		long ops = 0;
+		long bytes = 0;
+		double[] scores = new double[iterations];
+		for (int i = 0; i < warmups + iterations; i++){
+			long count = 0;
+			long allocStart = SearchStats.allocatedBytes();
+			long start = System.nanoTime();
+			long end = start + (millis * 1000000L);
+			long now;
+			do{
+				total += bench.run();
+				count++;
+				now = System.nanoTime();
+			} while (now < end);
+			long allocEnd = SearchStats.allocatedBytes();
+			if (i >= warmups){
+				scores[i - warmups] = count / ((now - start) / 1e9);
+				ops += count;
+				bytes += allocEnd - allocStart;
+			}
+		}
+		sink += total;
+		double mean = 0;
+		for (int i = 0; i < iterations; i++){
+			mean += scores[i];
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (int i = 0; i < iterations; i++){
+			variance += (scores[i] - mean) * (scores[i] - mean);
+		}
+		double error = (iterations > 1) ? Math.sqrt(variance / (iterations - 1)) : 0;
+		String alloc = (SearchStats.allocatedBytes() < 0) ? "n/a" : String.format("%.1f", (double) bytes / ops);
+		System.out.println(String.format("%-26s %-11s %5d %16.1f +- %12.1f  ops/s %12s  B/op",
+				bench.name, positionName, iterations, mean, error, alloc));
+	}
+
+	/**
+	 * Run every benchmark whose name contains the filter on every position.
+	 * @param filter
+	 */
+	public void run(String filter){
+		System.out.println(String.format("%-26s %-11s %5s %16s   %12s  %5s %12s",
+				"Benchmark", "Position", "Cnt", "Score", "Error", "Units", "Alloc"));
+		ArrayList<Bench> benches = benches();
+		Bitboard[] positions = new Bitboard[POSITIONS.length];
+		for (int p = 0; p < positions.length; p++){
+			positions[p] = Bitboard.parse(POSITIONS[p]);
+		}
+		for (int b = 0; b < benches.size(); b++){
+			Bench bench = benches.get(b);
+			if (!bench.name.contains(filter)){
+				continue;
+			}
+			for (int p = 0; p < positions.length; p++){
+				if (bench.setUp(positions[p])){
+					measure(bench, POSITION_NAMES[p]);
+				}
+				else{
+					System.out.println(String.format("%-26s %-11s %5s", bench.name, POSITION_NAMES[p], "-"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Measure how long AI.bestMove takes to search to the given depth on
+	 * each position with each number of threads, starting from an empty
+	 * table every time, and print the median time, the nodes per second of
+	 * all threads together and the speedup over one thread.
+	 * @param depth
+	 */
+	public void scaling(int depth){
+		System.out.println(String.format("%-11s %7s %10s %14s %8s  %s", "Position", "Threads", "Time ms",
+				"Nodes/s", "Speedup", "Move"));
+		for (int p = 0; p < POSITIONS.length; p++){
+			Bitboard position = Bitboard.parse(POSITIONS[p]);
+			double single = 0;
+			for (int t = 0; t < SCALING_THREADS.length; t++){
+				GameModel model = new GameModel(false);
+				AI ai = new AI(model, depth, null, null, new Evaluation());
+				ai.setThreads(SCALING_THREADS[t]);
+				ai.setTimeBudget(0);
+				ai.setPonder(false);
+				double[] millis = new double[Math.max(1, iterations)];
+				long nodes = 0;
+				long move = Move.NONE;
+				for (int i = -warmups; i < millis.length; i++){
+					ai.getTable().clear();
+					long start = System.nanoTime();
+					move = ai.bestMove(position, 2);
+					if (i >= 0){
+						millis[i] = (System.nanoTime() - start) / 1e6;
+						nodes += ai.getNodes();
+					}
+				}
+				double total = 0;
+				for (int i = 0; i < millis.length; i++){
+					total += millis[i];
+				}
+				Arrays.sort(millis);
+				double median = millis[millis.length / 2];
+				if (t == 0){
+					single = median;
+				}
+				System.out.println(String.format("%-11s %7d %10.1f %14.0f %8.2f  %s", POSITION_NAMES[p],
+						SCALING_THREADS[t], median, nodes / (total / 1000), single / median, Move.toString(move)));
+				ai.setThreads(1);
+			}
+		}
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors available");
+	}
+
+	/**
+	 * Run the benchmarks from the command line.
+	 * @param args
+	 */
+	public static void main(String[] args){
+		int warmups = 3;
+		int iterations = 5;
+		long millis = 1000;
+		String filter = "";
+		int scaling = 0;
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-w")){
+				warmups = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-i")){
+				iterations = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-t")){
+				millis = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-scaling")){
+				scaling = Integer.parseInt(args[++i]);
+			}
+			else{
+				filter = args[i];
+			}
+		}
+		Benchmark benchmark = new Benchmark(warmups, iterations, millis);
+		if (scaling > 0){
+			benchmark.scaling(scaling);
+		}
+		else{
+			benchmark.run(filter);
+		}
+	}
+
+}
@@ -0,0 +1,945 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * This class holds the pieces on a checkers board as a set of bit masks.
+ * Only the 32 dark squares can ever hold a piece, so every mask fits in an int.
+ * A dark square at row r and column c is stored in bit (r * 4) + (c / 2).
+ * Copying a position only costs copying four ints.
+ * Every board also keeps a 64 bit Zobrist key that is updated as pieces are
+ * placed, removed and promoted, so equal positions always have equal keys.
+ * Moves are generated as packed longs (see Move) into a buffer supplied by the
+ * caller and can be made and taken back on the same board, so searching
+ * does not need to copy boards or create objects.
+ * The counts used to judge a position (men, kings and back rank guards) are
+ * kept up to date as pieces change, and mobility and pieces in danger are
+ * worked out by shifting whole masks at once, so none of them need a scan
+ * of the board.
+ * A board can also be written to and read from a ByteBuffer in a fixed
+ * BYTES bytes, for files and transfer.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Bitboard {
+
+	/* mask with every square of the board set */
+	public static final int ALL = 0xFFFFFFFF;
+
+	/* random numbers for each kind of piece on each square, the seed is fixed
+	 * so keys stay the same between runs */
+	private static final long[][] ZOBRIST = new long[4][32];
+
+	/* xored into a key when player 2 is the one to move */
+	public static final long SIDE;
+
+	/* bytes used by a position written with write */
+	public static final int BYTES = 11;
+
+	/* most pieces a position written with write can hold */
+	public static final int MAX_WRITTEN_PIECES = 24;
+
+	/* most moves a player can have in one position */
+	public static final int MAX_MOVES = 256;
+
+	/* most pieces one chain of jumps can capture */
+	public static final int MAX_CHAIN = 12;
+
+	/* set on a chain direction once a jump was found from that square */
+	private static final int EXTENDED = 1 << 8;
+
+	/* square one step away from each square in each direction, -1 if off the board.
+	 * The directions are up-left, up-right, down-left and down-right. */
+	private static final int[][] STEP = new int[32][4];
+
+	/* square two steps away from each square in each direction, -1 if off the board */
+	private static final int[][] JUMP = new int[32][4];
+
+	/* rows changed and columns changed by each direction */
+	private static final int[] DR = {-1, -1, 1, 1};
+	private static final int[] DC = {-1, 1, -1, 1};
+
+	/* squares each player's men are kinged on, which are the other player's back rank */
+	private static final int P1_KING_ROW = 0x0000000F;
+	private static final int P2_KING_ROW = 0xF0000000;
+
+	/* rows 0, 2, 4, 6 and rows 1, 3, 5, 7 */
+	private static final int EVEN_ROWS = 0x0F0F0F0F;
+	private static final int ODD_ROWS = 0xF0F0F0F0;
+	/* squares on the left edge (odd rows) and right edge (even rows) */
+	private static final int LEFT_EDGE = 0x10101010;
+	private static final int RIGHT_EDGE = 0x08080808;
+
+	static{
+		for (int sq = 0; sq < 32; sq++){
+			for (int d = 0; d < 4; d++){
+				STEP[sq][d] = square(row(sq) + DR[d], col(sq) + DC[d]);
+				JUMP[sq][d] = square(row(sq) + (2 * DR[d]), col(sq) + (2 * DC[d]));
+			}
+		}
+	}
+
+	static{
+		Random random = new Random(0x436865636B657273L);
+		for (int kind = 0; kind < 4; kind++){
+			for (int sq = 0; sq < 32; sq++){
+				ZOBRIST[kind][sq] = random.nextLong();
+			}
+		}
+		SIDE = random.nextLong();
+	}
+
+	private int p1Men;//player 1 pieces that are not kings
+	private int p1Kings;
+	private int p2Men;//player 2 pieces that are not kings
+	private int p2Kings;
+	private long key;//zobrist key of the pieces on the board
+
+	private int p1MenCount;//counts kept up to date as pieces change
+	private int p1KingCount;
+	private int p1Guards;//player 1 men still on their back rank
+	private int p2MenCount;
+	private int p2KingCount;
+	private int p2Guards;
+
+	private int[] chainSquare;//squares of the jump chain being walked, made on first use
+	private int[] chainDir;//next direction to try from each square of the chain
+	private int[] chainCaptured;//squares captured on the way to each square of the chain
+
+	/**
+	 * Construct an empty board.
+	 */
+	public Bitboard(){
+		this.p1Men = 0;
+		this.p1Kings = 0;
+		this.p2Men = 0;
+		this.p2Kings = 0;
+		this.key = 0;
+	}
+
+	/**
+	 * Construct a copy of the board passed in.
+	 * @param other
+	 */
+	public Bitboard(Bitboard other){
+		this.p1Men = other.p1Men;
+		this.p1Kings = other.p1Kings;
+		this.p2Men = other.p2Men;
+		this.p2Kings = other.p2Kings;
+		this.key = other.key;
+		this.p1MenCount = other.p1MenCount;
+		this.p1KingCount = other.p1KingCount;
+		this.p1Guards = other.p1Guards;
+		this.p2MenCount = other.p2MenCount;
+		this.p2KingCount = other.p2KingCount;
+		this.p2Guards = other.p2Guards;
+	}
+
+	/**
+	 * @return a board set up with the starting position of a game.
+	 * Player 2 fills the top two rows and player 1 fills the bottom two.
+	 */
+	public static Bitboard initial(){
+		Bitboard board = new Bitboard();
+		for (int sq = 0; sq < 8; sq++){
+			board.set(sq, 2, false);
+			board.set(sq + 24, 1, false);
+		}
+		return board;
+	}
+
+	/**
+	 * Get the square index of the given coordinate.
+	 * @param r
+	 * @param c
+	 * @return the index from 0 to 31 or -1 if the coordinate is off the board
+	 * or on a light square
+	 */
+	public static int square(int r, int c){
+		if ((r < 0) || (r >= 8) || (c < 0) || (c >= 8) || ((r + c) % 2 == 0)){
+			return -1;
+		}
+		return (r * 4) + (c / 2);
+	}
+
+	/**
+	 * @param sq
+	 * @return the row of the given square index
+	 */
+	public static int row(int sq){
+		return sq >> 2;
+	}
+
+	/**
+	 * @param sq
+	 * @return the column of the given square index
+	 */
+	public static int col(int sq){
+		return ((sq & 3) << 1) + (((sq >> 2) & 1) ^ 1);
+	}
+
+	/**
+	 * Get the index of a kind of piece in the zobrist table.
+	 * @param id
+	 * @param king
+	 * @return
+	 */
+	private static int kind(int id, boolean king){
+		return ((id - 1) * 2) + (king ? 1 : 0);
+	}
+
+	/**
+	 * @return the zobrist key of the pieces on this board. The player to move
+	 * is not part of it, xor in SIDE when player 2 is to move.
+	 */
+	public long getKey(){
+		return key;
+	}
+
+	/**
+	 * @param id
+	 * @return the mask of men (non kings) owned by the given player
+	 */
+	public int men(int id){
+		return (id == 1) ? p1Men : p2Men;
+	}
+
+	/**
+	 * @param id
+	 * @return the mask of kings owned by the given player
+	 */
+	public int kings(int id){
+		return (id == 1) ? p1Kings : p2Kings;
+	}
+
+	/**
+	 * @param id
+	 * @return the mask of every piece owned by the given player
+	 */
+	public int pieces(int id){
+		return (id == 1) ? (p1Men | p1Kings) : (p2Men | p2Kings);
+	}
+
+	/**
+	 * @return the mask of every occupied square
+	 */
+	public int occupied(){
+		return p1Men | p1Kings | p2Men | p2Kings;
+	}
+
+	/**
+	 * @return the mask of every empty square
+	 */
+	public int empty(){
+		return ~occupied();
+	}
+
+	/**
+	 * @param id
+	 * @return how many pieces the given player has left
+	 */
+	public int count(int id){
+		return (id == 1) ? (p1MenCount + p1KingCount) : (p2MenCount + p2KingCount);
+	}
+
+	/**
+	 * @param id
+	 * @return how many men (non kings) the given player has left
+	 */
+	public int menCount(int id){
+		return (id == 1) ? p1MenCount : p2MenCount;
+	}
+
+	/**
+	 * @param id
+	 * @return how many kings the given player has
+	 */
+	public int kingCount(int id){
+		return (id == 1) ? p1KingCount : p2KingCount;
+	}
+
+	/**
+	 * @param id
+	 * @return how many of the given player's men are still on their back rank,
+	 * keeping the other player from being kinged there
+	 */
+	public int guards(int id){
+		return (id == 1) ? p1Guards : p2Guards;
+	}
+
+	/**
+	 * @param id
+	 * @return how many simple moves and jumps the given player could make
+	 */
+	public int mobility(int id){
+		int empty = empty();
+		int enemy = pieces(3 - id);
+		int up = (id == 1) ? pieces(id) : kings(id);
+		int down = (id == 2) ? pieces(id) : kings(id);
+		int total = Integer.bitCount(upLeft(up) & empty) + Integer.bitCount(upRight(up) & empty)
+				+ Integer.bitCount(downLeft(down) & empty) + Integer.bitCount(downRight(down) & empty);
+		total += Integer.bitCount(upLeft(upLeft(up) & enemy) & empty)
+				+ Integer.bitCount(upRight(upRight(up) & enemy) & empty)
+				+ Integer.bitCount(downLeft(downLeft(down) & enemy) & empty)
+				+ Integer.bitCount(downRight(downRight(down) & enemy) & empty);
+		return total;
+	}
+
+	/**
+	 * @param id
+	 * @return how many of the given player's pieces the other player could jump right now
+	 */
+	public int danger(int id){
+		int empty = empty();
+		int mine = pieces(id);
+		//enemy pieces that can move up the board and down the board
+		int up = (id == 2) ? pieces(3 - id) : kings(3 - id);
+		int down = (id == 1) ? pieces(3 - id) : kings(3 - id);
+		//a piece is in danger if an attacker is next to it and the square past it is empty
+		int inDanger = downRight(upLeft(upLeft(up) & mine) & empty)
+				| downLeft(upRight(upRight(up) & mine) & empty)
+				| upRight(downLeft(downLeft(down) & mine) & empty)
+				| upLeft(downRight(downRight(down) & mine) & empty);
+		return Integer.bitCount(inDanger);
+	}
+
+	/**
+	 * @param mask
+	 * @return the squares one step up and to the left of the given squares
+	 */
+	private static int upLeft(int mask){
+		return ((mask & EVEN_ROWS) >>> 4) | ((mask & ODD_ROWS & ~LEFT_EDGE) >>> 5);
+	}
+
+	/**
+	 * @param mask
+	 * @return the squares one step up and to the right of the given squares
+	 */
+	private static int upRight(int mask){
+		return ((mask & EVEN_ROWS & ~RIGHT_EDGE) >>> 3) | ((mask & ODD_ROWS) >>> 4);
+	}
+
+	/**
+	 * @param mask
+	 * @return the squares one step down and to the left of the given squares
+	 */
+	private static int downLeft(int mask){
+		return ((mask & EVEN_ROWS) << 4) | ((mask & ODD_ROWS & ~LEFT_EDGE) << 3);
+	}
+
+	/**
+	 * @param mask
+	 * @return the squares one step down and to the right of the given squares
+	 */
+	private static int downRight(int mask){
+		return ((mask & EVEN_ROWS & ~RIGHT_EDGE) << 5) | ((mask & ODD_ROWS) << 4);
+	}
+
+	/**
+	 * Add to the counts for a piece placed on or removed from a square.
+	 * @param id
+	 * @param king
+	 * @param sq
+	 * @param delta 1 when placing and -1 when removing
+	 */
+	private void tally(int id, boolean king, int sq, int delta){
+		if (id == 1){
+			if (king){
+				p1KingCount += delta;
+			}
+			else{
+				p1MenCount += delta;
+				if ((P2_KING_ROW & (1 << sq)) != 0){
+					p1Guards += delta;
+				}
+			}
+		}
+		else{
+			if (king){
+				p2KingCount += delta;
+			}
+			else{
+				p2MenCount += delta;
+				if ((P1_KING_ROW & (1 << sq)) != 0){
+					p2Guards += delta;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param sq
+	 * @return the id of the player on the given square, 0 if it is empty.
+	 */
+	public int owner(int sq){
+		int bit = 1 << sq;
+		if (((p1Men | p1Kings) & bit) != 0){
+			return 1;
+		}
+		else if (((p2Men | p2Kings) & bit) != 0){
+			return 2;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param sq
+	 * @return true if the piece on the given square is a king
+	 */
+	public boolean isKing(int sq){
+		return ((p1Kings | p2Kings) & (1 << sq)) != 0;
+	}
+
+	/**
+	 * Place a piece on the given square, replacing whatever was there.
+	 * @param sq
+	 * @param id
+	 * @param king
+	 */
+	public void set(int sq, int id, boolean king){
+		clear(sq);
+		int bit = 1 << sq;
+		if (id == 1){
+			if (king){
+				p1Kings |= bit;
+			}
+			else{
+				p1Men |= bit;
+			}
+		}
+		else if (id == 2){
+			if (king){
+				p2Kings |= bit;
+			}
+			else{
+				p2Men |= bit;
+			}
+		}
+		else{
+			return;
+		}
+		key ^= ZOBRIST[kind(id, king)][sq];
+		tally(id, king, sq, 1);
+	}
+
+	/**
+	 * Remove any piece from the given square.
+	 * @param sq
+	 */
+	public void clear(int sq){
+		int id = owner(sq);
+		if (id != 0){
+			key ^= ZOBRIST[kind(id, isKing(sq))][sq];
+			tally(id, isKing(sq), sq, -1);
+			int bit = ~(1 << sq);
+			p1Men &= bit;
+			p1Kings &= bit;
+			p2Men &= bit;
+			p2Kings &= bit;
+		}
+	}
+
+	/**
+	 * Turn the man on the given square into a king.
+	 * @param sq
+	 */
+	public void promote(int sq){
+		int bit = 1 << sq;
+		if ((p1Men & bit) != 0){
+			p1Men &= ~bit;
+			p1Kings |= bit;
+			key ^= ZOBRIST[kind(1, false)][sq] ^ ZOBRIST[kind(1, true)][sq];
+			tally(1, false, sq, -1);
+			tally(1, true, sq, 1);
+		}
+		else if ((p2Men & bit) != 0){
+			p2Men &= ~bit;
+			p2Kings |= bit;
+			key ^= ZOBRIST[kind(2, false)][sq] ^ ZOBRIST[kind(2, true)][sq];
+			tally(2, false, sq, -1);
+			tally(2, true, sq, 1);
+		}
+	}
+
+	/**
+	 * Write every move the given player can make into the buffer.
+	 * Moves are listed square by square, simple moves before jumps, in the
+	 * same order the GameModel tries them.
+	 * @param id
+	 * @param moves buffer to write to
+	 * @param start index of the first move to write
+	 * @return the number of moves written
+	 */
+	public int generate(int id, long[] moves, int start){
+		return generate(id, ALL, moves, start);
+	}
+
+	/**
+	 * Write every move the given player can make with the pieces on the given
+	 * squares into the buffer.
+	 * @param id
+	 * @param from mask of squares to move from
+	 * @param moves buffer to write to
+	 * @param start index of the first move to write
+	 * @return the number of moves written
+	 */
+	public int generate(int id, int from, long[] moves, int start){
+		int count = start;
+		int empty = empty();
+		int enemy = pieces(3 - id);
+		int kings = kings(id);
+		int kingRow = (id == 1) ? P1_KING_ROW : P2_KING_ROW;
+		//men only move forward, kings move both ways
+		int firstDir = (id == 1) ? 0 : 2;
+		for (int rest = pieces(id) & from; rest != 0; rest &= rest - 1){
+			int sq = Integer.numberOfTrailingZeros(rest);
+			boolean king = (kings & (1 << sq)) != 0;
+			int lo = king ? 0 : firstDir;
+			int hi = king ? 4 : firstDir + 2;
+			for (int d = lo; d < hi; d++){
+				int to = STEP[sq][d];
+				if ((to >= 0) && ((empty & (1 << to)) != 0)){
+					boolean promotion = !king && ((kingRow & (1 << to)) != 0);
+					moves[count++] = Move.encode(sq, to, promotion, 0, 0);
+				}
+			}
+			count = chains(sq, id, king, lo, hi, moves, count);
+		}
+		return count - start;
+	}
+
+	/**
+	 * Write every complete chain of jumps the piece on the given square can
+	 * make, walking the chains depth first over a stack of squares kept by the
+	 * board. A chain goes on while the piece can jump again and ends when it
+	 * can not, or when a man is kinged. Captured pieces are taken off as they
+	 * are jumped, the same as when the player jumps one click at a time. Each
+	 * chain is written as one move holding every square it captured, and chains
+	 * that reach the same square by capturing the same pieces are written once.
+	 * @param from
+	 * @param id
+	 * @param king
+	 * @param lo first direction the piece can move in
+	 * @param hi one past the last direction
+	 * @param moves buffer to write to
+	 * @param count index of the next move to write
+	 * @return the index after the last move written
+	 */
+	private int chains(int from, int id, boolean king, int lo, int hi, long[] moves, int count){
+		int enemy = pieces(3 - id);
+		int enemyKings = kings(3 - id);
+		int kingRow = (id == 1) ? P1_KING_ROW : P2_KING_ROW;
+		//the piece leaves its square, so a king may pass back over it
+		int empty = empty() | (1 << from);
+		int first = count;
+		if (chainSquare == null){
+			chainSquare = new int[MAX_CHAIN + 1];
+			chainDir = new int[MAX_CHAIN + 1];
+			chainCaptured = new int[MAX_CHAIN + 1];
+		}
+		int top = 0;
+		chainSquare[0] = from;
+		chainDir[0] = lo;
+		chainCaptured[0] = 0;
+		while (top >= 0){
+			int sq = chainSquare[top];
+			int captured = chainCaptured[top];
+			int next = chainDir[top];
+			int d = next & ~EXTENDED;
+			if (d < hi){
+				chainDir[top] = next + 1;
+				int over = STEP[sq][d];
+				int to = JUMP[sq][d];
+				if ((to < 0) || ((enemy & ~captured & (1 << over)) == 0) || (((empty | captured) & (1 << to)) == 0)){
+					continue;
+				}
+				//a jump was found so the chain can not end on this square
+				chainDir[top] |= EXTENDED;
+				captured |= 1 << over;
+				if (!king && ((kingRow & (1 << to)) != 0)){
+					count = addChain(from, to, true, captured, enemyKings & captured, moves, first, count);
+				}
+				else{
+					top++;
+					chainSquare[top] = to;
+					chainDir[top] = lo;
+					chainCaptured[top] = captured;
+				}
+			}
+			else{
+				if ((top > 0) && ((next & EXTENDED) == 0)){
+					count = addChain(from, sq, false, captured, enemyKings & captured, moves, first, count);
+				}
+				top--;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Write a finished chain unless an equal one was already written for the
+	 * same piece.
+	 * @param from
+	 * @param to
+	 * @param promotion
+	 * @param captured
+	 * @param capturedKings
+	 * @param moves buffer to write to
+	 * @param first index of the first chain written for this piece
+	 * @param count index of the next move to write
+	 * @return the index after the last move written
+	 */
+	private static int addChain(int from, int to, boolean promotion, int captured, int capturedKings,
+			long[] moves, int first, int count){
+		long move = Move.encode(from, to, promotion, captured, capturedKings);
+		for (int i = first; i < count; i++){
+			if (moves[i] == move){
+				return count;
+			}
+		}
+		moves[count] = move;
+		return count + 1;
+	}
+
+	/**
+	 * Build the move made by the piece on the first square jumping to each of
+	 * the others in turn, the way the player jumps one click at a time.
+	 * Unlike the chains made by generate, the piece may stop while it could
+	 * still jump, and a man kinged on the way jumps on as a king.
+	 * @param squares the square the piece starts on, then every square it lands on
+	 * @param count number of squares
+	 * @return the move or Move.NONE if one of the jumps is not legal
+	 */
+	public long jumps(int[] squares, int count){
+		int from = squares[0];
+		int id = owner(from);
+		if ((id == 0) || (count < 2)){
+			return Move.NONE;
+		}
+		int enemy = pieces(3 - id);
+		int kingRow = (id == 1) ? P1_KING_ROW : P2_KING_ROW;
+		int firstDir = (id == 1) ? 0 : 2;
+		//the piece leaves its square, so a king may pass back over it
+		int open = empty() | (1 << from);
+		boolean king = isKing(from);
+		boolean promotion = false;
+		int captured = 0;
+		int sq = from;
+		for (int i = 1; i < count; i++){
+			int to = squares[i];
+			int lo = king ? 0 : firstDir;
+			int hi = king ? 4 : firstDir + 2;
+			int d = lo;
+			while ((d < hi) && (JUMP[sq][d] != to)){
+				d++;
+			}
+			if (d == hi){
+				return Move.NONE;
+			}
+			int over = STEP[sq][d];
+			//captured pieces are taken off as they are jumped
+			if (((enemy & ~captured & (1 << over)) == 0) || (((open | captured) & (1 << to)) == 0)){
+				return Move.NONE;
+			}
+			captured |= 1 << over;
+			if (!king && ((kingRow & (1 << to)) != 0)){
+				king = true;
+				promotion = true;
+			}
+			sq = to;
+		}
+		return Move.encode(from, sq, promotion, captured, kings(3 - id) & captured);
+	}
+
+	/**
+	 * Find the squares a capture made on this board lands on, the reverse of
+	 * jumps. Chains capturing the same pieces between the same squares leave
+	 * the same position, so the first one found is used.
+	 * @param move
+	 * @param squares receives the start square, then every square landed on,
+	 * must hold at least MAX_CHAIN + 1 squares
+	 * @return the number of squares written, 0 if no chain of jumps makes the move
+	 */
+	public int path(long move, int[] squares){
+		int from = Move.from(move);
+		int id = owner(from);
+		if ((id == 0) || !Move.isCapture(move)){
+			return 0;
+		}
+		squares[0] = from;
+		return path(move, id, isKing(from), empty() | (1 << from), 0, squares, 1);
+	}
+
+	/**
+	 * Walk on from the last square found, trying each jump over a piece the
+	 * move captures that has not been jumped yet.
+	 * @param move
+	 * @param id the player moving
+	 * @param king if the piece is a king on the last square found
+	 * @param open squares the piece can land on besides the ones it captured
+	 * @param captured squares jumped so far
+	 * @param squares squares found so far
+	 * @param count number of squares found
+	 * @return the number of squares of the whole chain, 0 if this way does not make the move
+	 */
+	private int path(long move, int id, boolean king, int open, int captured, int[] squares, int count){
+		int sq = squares[count - 1];
+		int all = Move.captured(move);
+		if (captured == all){
+			return (sq == Move.to(move)) ? count : 0;
+		}
+		int kingRow = (id == 1) ? P1_KING_ROW : P2_KING_ROW;
+		int firstDir = (id == 1) ? 0 : 2;
+		int lo = king ? 0 : firstDir;
+		int hi = king ? 4 : firstDir + 2;
+		for (int d = lo; d < hi; d++){
+			int over = STEP[sq][d];
+			int to = JUMP[sq][d];
+			if ((to < 0) || ((all & ~captured & (1 << over)) == 0) || (((open | captured) & (1 << to)) == 0)){
+				continue;
+			}
+			squares[count] = to;
+			int found = path(move, id, king || ((kingRow & (1 << to)) != 0), open, captured | (1 << over),
+					squares, count + 1);
+			if (found > 0){
+				return found;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Check if the piece on the given square could be jumped by the other
+	 * player right now.
+	 * @param sq
+	 * @return true if an enemy piece next to it can jump it to an empty square
+	 */
+	public boolean threatened(int sq){
+		int id = owner(sq);
+		if (id == 0){
+			return false;
+		}
+		int enemyMen = men(3 - id);
+		int enemyKings = kings(3 - id);
+		int empty = empty();
+		for (int d = 0; d < 4; d++){
+			int attacker = STEP[sq][d];
+			int landing = STEP[sq][3 - d];
+			if ((attacker < 0) || (landing < 0) || ((empty & (1 << landing)) == 0)){
+				continue;
+			}
+			//the attacker moves in the direction opposite to d, men only move forward
+			boolean forward = (id == 1) ? (d < 2) : (d >= 2);
+			if (((enemyKings & (1 << attacker)) != 0) || (forward && ((enemyMen & (1 << attacker)) != 0))){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Make a move on this board.
+	 * @param move
+	 */
+	public void makeMove(long move){
+		int from = Move.from(move);
+		int to = Move.to(move);
+		int id = owner(from);
+		boolean king = isKing(from);
+		toggle(from, id, king, -1);
+		int kings = kings(3 - id);
+		for (int rest = Move.captured(move); rest != 0; rest &= rest - 1){
+			int bit = rest & -rest;
+			toggle(Integer.numberOfTrailingZeros(bit), 3 - id, (kings & bit) != 0, -1);
+		}
+		toggle(to, id, king || Move.isPromotion(move), 1);
+	}
+
+	/**
+	 * Take back a move that was the last one made on this board.
+	 * @param move
+	 */
+	public void unmakeMove(long move){
+		int from = Move.from(move);
+		int to = Move.to(move);
+		int id = owner(to);
+		boolean king = isKing(to);
+		toggle(to, id, king, -1);
+		toggle(from, id, king && !Move.isPromotion(move), 1);
+		int kings = Move.capturedKings(move);
+		for (int rest = Move.captured(move); rest != 0; rest &= rest - 1){
+			int bit = rest & -rest;
+			toggle(Integer.numberOfTrailingZeros(bit), 3 - id, (kings & bit) != 0, 1);
+		}
+	}
+
+	/**
+	 * Place or remove a piece without checking what is on the square, keeping
+	 * the key and counts up to date. Used to make and take back moves quickly.
+	 * @param sq
+	 * @param id
+	 * @param king
+	 * @param delta 1 to place the piece and -1 to remove it
+	 */
+	private void toggle(int sq, int id, boolean king, int delta){
+		int bit = 1 << sq;
+		if (id == 1){
+			if (king){
+				p1Kings ^= bit;
+			}
+			else{
+				p1Men ^= bit;
+			}
+		}
+		else{
+			if (king){
+				p2Kings ^= bit;
+			}
+			else{
+				p2Men ^= bit;
+			}
+		}
+		key ^= ZOBRIST[kind(id, king)][sq];
+		tally(id, king, sq, delta);
+	}
+
+	/**
+	 * Read a board written by toString. Each of the 32 squares is one of
+	 * r (player 1 man), R (player 1 king), b (player 2 man), B (player 2 king)
+	 * or . (empty), starting at the top row. Any / between rows is skipped.
+	 * @param text
+	 * @return
+	 */
+	public static Bitboard parse(String text){
+		Bitboard board = new Bitboard();
+		int sq = 0;
+		for (int i = 0; i < text.length(); i++){
+			char ch = text.charAt(i);
+			if (ch == '/'){
+				continue;
+			}
+			if (sq >= 32){
+				throw new IllegalArgumentException("Too many squares in board: " + text);
+			}
+			switch (ch){
+				case 'r': board.set(sq, 1, false); break;
+				case 'R': board.set(sq, 1, true); break;
+				case 'b': board.set(sq, 2, false); break;
+				case 'B': board.set(sq, 2, true); break;
+				case '.': break;
+				default: throw new IllegalArgumentException("Unknown square '" + ch + "' in board: " + text);
+			}
+			sq++;
+		}
+		if (sq != 32){
+			throw new IllegalArgumentException("Too few squares in board: " + text);
+		}
+		return board;
+	}
+
+	/**
+	 * Write the board and the player to move into a buffer in BYTES bytes,
+	 * without moving the buffer's position. The occupied squares are written
+	 * as an int, then one bit for each occupied square in order saying if it
+	 * holds a player 2 piece (3 bytes), then one bit saying if it holds a king
+	 * (3 bytes), then the player to move (1 byte).
+	 * @param buffer
+	 * @param index where in the buffer to write
+	 * @param id the player to move
+	 */
+	public void write(ByteBuffer buffer, int index, int id){
+		int occupied = occupied();
+		if (Integer.bitCount(occupied) > MAX_WRITTEN_PIECES){
+			throw new IllegalArgumentException("Too many pieces to write: " + this);
+		}
+		int colors = 0;
+		int crowned = 0;
+		int bit = 0;
+		for (int rest = occupied; rest != 0; rest &= rest - 1){
+			int sq = Integer.numberOfTrailingZeros(rest);
+			if (owner(sq) == 2){
+				colors |= 1 << bit;
+			}
+			if (isKing(sq)){
+				crowned |= 1 << bit;
+			}
+			bit++;
+		}
+		buffer.putInt(index, occupied);
+		for (int i = 0; i < 3; i++){
+			buffer.put(index + 4 + i, (byte) (colors >>> (8 * i)));
+			buffer.put(index + 7 + i, (byte) (crowned >>> (8 * i)));
+		}
+		buffer.put(index + 10, (byte) id);
+	}
+
+	/**
+	 * Read a board written by write, without moving the buffer's position.
+	 * @param buffer
+	 * @param index where in the buffer the board starts
+	 * @return
+	 */
+	public static Bitboard read(ByteBuffer buffer, int index){
+		int occupied = buffer.getInt(index);
+		int colors = 0;
+		int crowned = 0;
+		for (int i = 0; i < 3; i++){
+			colors |= (buffer.get(index + 4 + i) & 0xFF) << (8 * i);
+			crowned |= (buffer.get(index + 7 + i) & 0xFF) << (8 * i);
+		}
+		Bitboard board = new Bitboard();
+		int bit = 0;
+		for (int rest = occupied; rest != 0; rest &= rest - 1){
+			board.set(Integer.numberOfTrailingZeros(rest), ((colors >>> bit) & 1) + 1, ((crowned >>> bit) & 1) != 0);
+			bit++;
+		}
+		return board;
+	}
+
+	/**
+	 * Read the player to move of a board written by write.
+	 * @param buffer
+	 * @param index where in the buffer the board starts
+	 * @return
+	 */
+	public static int readSide(ByteBuffer buffer, int index){
+		return buffer.get(index + 10);
+	}
+
+	/**
+	 * @return the board as 8 rows of 4 squares separated by /, in the format read by parse
+	 */
+	@Override
+	public String toString(){
+		StringBuilder text = new StringBuilder(39);
+		for (int sq = 0; sq < 32; sq++){
+			if ((sq > 0) && (sq % 4 == 0)){
+				text.append('/');
+			}
+			int id = owner(sq);
+			if (id == 0){
+				text.append('.');
+			}
+			else{
+				char ch = (id == 1) ? 'r' : 'b';
+				text.append(isKing(sq) ? Character.toUpperCase(ch) : ch);
+			}
+		}
+		return text.toString();
+	}
+
+	@Override
+	public int hashCode(){
+		return (int) (key ^ (key >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if (o instanceof Bitboard){
+			Bitboard other = (Bitboard) o;
+			return (other.p1Men == p1Men) && (other.p1Kings == p1Kings)
+					&& (other.p2Men == p2Men) && (other.p2Kings == p2Kings);
+		}
+		return false;
+	}
+
+}
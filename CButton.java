@@ -11,9 +11,16 @@ import java.awt.event.ActionListener;
  */
 public class CButton extends JButton{
 
+	/* image of each kind of disc, loaded the first time it is shown */
+	private static final ImageIcon[] ICONS = new ImageIcon[4];
+	
+	/* files the images are loaded from, in the order of ICONS */
+	private static final String[] FILES = {"red.jpg", "red-king.jpg", "black.jpg", "black-king.jpg"};
+
 	private GameModel model;
 	private int r;
 	private int c;
+	private Disc shown;//disc whose image is showing, null if empty
 	
 	/**
 	 * Constructs a new button and the way it is displayed based on what piece,
@@ -41,34 +48,36 @@ public class CButton extends JButton{
 	/**
 	 * update this particular piece's view.
 	 * This method is used by the GUIView update function to
-	 * update when notified by the observer.
+	 * update when notified by the observer. Nothing is done if the same
+	 * disc is already showing.
 	 */
 	public void update(){
 		Disc disc = this.model.get(r, c);
+		if (disc == shown){
+			return;
+		}
+		shown = disc;
 		//if its empty
 		if (disc == null){
 			this.setIcon(null);
 		}
 		else{
-			//if player 1 has a piece there
-			if (disc.get() == 1){
-				if (disc.isKing()){
-					this.setIcon(new ImageIcon("red-king.jpg"));
-				}
-				else{
-					this.setIcon(new ImageIcon("red.jpg"));
-				}
-			}
-			//if player 2 has a piece there
-			else{
-				if (disc.isKing()){
-					this.setIcon(new ImageIcon("black-king.jpg"));
-				}
-				else{
-					this.setIcon(new ImageIcon("black.jpg"));
-				}
-			}
+			this.setIcon(icon(disc));
+		}
+	}
+	
+	/**
+	 * Get the image of the given disc. Each image is read from its file
+	 * once and shared by every button.
+	 * @param disc
+	 * @return
+	 */
+	private static ImageIcon icon(Disc disc){
+		int i = ((disc.get() - 1) * 2) + (disc.isKing() ? 1 : 0);
+		if (ICONS[i] == null){
+			ICONS[i] = new ImageIcon(FILES[i]);
 		}
+		return ICONS[i];
 	}
 	
 }
@@ -108,7 +117,7 @@ class listener implements ActionListener{
 					//if that piece is player 1's
 					if (model.get(r, c).get() == 1){
 						//if player 1 is in a jumping sequence
-						if (model.jumping && (model.jumper.equals(new Cell(r,c)))){
+						if (model.jumping && (model.jumper == Cell.of(r,c))){
 							model.clicked.add(r);
 							model.clicked.add(c);
 						}
@@ -141,7 +150,7 @@ class listener implements ActionListener{
 						//if they are entering a jump sequence (moving with a normal jump, not double or more yet)
 						else if ((move = model.move(r1, c1, r, c)) == 2){
 							model.jumping = true;
-							model.jumper = new Cell(r,c);
+							model.jumper = Cell.of(r,c);
 						}
 						//if it is a normal move (one space away)
 						else if (move == 1){
@@ -1,20 +1,46 @@
 /**
- * This class represents an ordered pair. It is used for the 
- * HashMap that the board is stored in and overrides the hashcode and 
+ * This class represents an ordered pair naming a square of the board. It is
+ * used as the key of the GUIView's buttons and overrides the hashcode and
  * equals methods.
+ * Cells are immutable, so one shared instance is kept for each square of
+ * the board and handed out by of instead of making a new one every time.
  * @author Michael Washburn <mdw@michaelwashburn.com>
  *
  */
 public class Cell {
 	
-	private int r;
-	private int c;
+	/* the shared cell for every square, indexed by r * 8 + c */
+	private static final Cell[] CELLS = new Cell[64];
+	static {
+		for (int r = 0; r < 8; r++){
+			for (int c = 0; c < 8; c++){
+				CELLS[(r * 8) + c] = new Cell(r,c);
+			}
+		}
+	}
+	
+	private final int r;
+	private final int c;
 
-	public Cell(int r, int c){
+	private Cell(int r, int c){
 		this.r = r;
 		this.c = c;
 	}
 	
+	/**
+	 * Get the cell for the given coordinate. Squares on the board always
+	 * return the same shared instance.
+	 * @param r
+	 * @param c
+	 * @return
+	 */
+	public static Cell of(int r, int c){
+		if ((r >= 0) && (r < 8) && (c >= 0) && (c < 8)){
+			return CELLS[(r * 8) + c];
+		}
+		return new Cell(r,c);
+	}
+	
 	public int getR(){
 		return r;
 	}
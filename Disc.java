@@ -1,22 +1,48 @@
 /**
  * This class represents a disc object. It stores whether or not the disc is a 
  * king and the id of the player who owns it.
+ * Discs are immutable and there are only four kinds, so the same four
+ * shared instances are used everywhere. Use of to get one.
  * @author Michael Washburn <mdw@michaelwashburn.com>
  *
  */
 public class Disc {
 
-	private boolean king;
+	/* a man of player 1 */
+	public static final Disc P1 = new Disc(1, false);
 	
-	private int id;
+	/* a king of player 1 */
+	public static final Disc P1_KING = new Disc(1, true);
 	
-	public Disc(int id){
+	/* a man of player 2 */
+	public static final Disc P2 = new Disc(2, false);
+	
+	/* a king of player 2 */
+	public static final Disc P2_KING = new Disc(2, true);
+
+	private final boolean king;
+	
+	private final int id;
+	
+	private Disc(int id, boolean king){
 		this.id = id;
-		this.king = false;
+		this.king = king;
 	}
 	
-	public void kingMe(){
-		this.king = true;
+	/**
+	 * Get the shared disc of the given kind.
+	 * @param id the player who owns the disc
+	 * @param king
+	 * @return
+	 */
+	public static Disc of(int id, boolean king){
+		if (id == 1){
+			return king ? P1_KING : P1;
+		}
+		else if (id == 2){
+			return king ? P2_KING : P2;
+		}
+		throw new IllegalArgumentException("No player " + id);
 	}
 	
 	public int get(){
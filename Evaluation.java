@@ -0,0 +1,229 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This class scores a board for the search as a weighted sum of terms, each
+ * the difference between the two players: men, kings, how far men have
+ * advanced, men left on the back rank, pieces in the center, moves available
+ * and pieces that could be jumped. Terms with a weight of 0 are not worked
+ * out at all. The default weights score men, kings and the back rank only.
+ * Weights are read from a text file with one name=value pair per line, as
+ * written by write and by Tuner. Lines starting with # are skipped and terms
+ * left out keep their default weight.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Evaluation {
+
+	/* file the AI looks for when it starts */
+	public static final String DEFAULT_FILE = "weights.txt";
+
+	/* the terms, used as indexes into the weights */
+	public static final int MAN = 0;
+	public static final int KING = 1;
+	public static final int ADVANCE = 2;
+	public static final int BACK_RANK = 3;
+	public static final int CENTER = 4;
+	public static final int MOBILITY = 5;
+	public static final int DANGER = 6;
+
+	/* number of terms */
+	public static final int TERMS = 7;
+
+	/* name of each term in a weights file */
+	public static final String[] NAMES = {"man", "king", "advance", "back_rank", "center", "mobility", "danger"};
+
+	/* weight of each term when none is given */
+	public static final int[] DEFAULTS = {100, 150, 0, 10, 0, 0, 0};
+
+	/* the eight dark squares in the middle two rows and middle four columns */
+	private static final int CENTER_SQUARES;
+	static {
+		int mask = 0;
+		for (int r = 3; r <= 4; r++){
+			for (int c = 2; c <= 5; c++){
+				int sq = Bitboard.square(r, c);
+				if (sq >= 0){
+					mask |= 1 << sq;
+				}
+			}
+		}
+		CENTER_SQUARES = mask;
+	}
+
+	private int[] weights;
+
+	/**
+	 * Construct a new evaluation with the default weights.
+	 */
+	public Evaluation(){
+		this(DEFAULTS);
+	}
+
+	/**
+	 * Construct a new evaluation with the given weight for each term.
+	 * @param weights
+	 */
+	public Evaluation(int[] weights){
+		if (weights.length != TERMS){
+			throw new IllegalArgumentException("Expected " + TERMS + " weights, got " + weights.length);
+		}
+		this.weights = weights.clone();
+	}
+
+	/**
+	 * Read weights from a file.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static Evaluation load(String path) throws IOException{
+		int[] weights = DEFAULTS.clone();
+		BufferedReader in = new BufferedReader(new FileReader(path));
+		try{
+			String line;
+			while ((line = in.readLine()) != null){
+				line = line.trim();
+				if ((line.length() == 0) || line.startsWith("#")){
+					continue;
+				}
+				String[] pair = line.split("=");
+				if (pair.length != 2){
+					throw new IOException("Expected name=value in " + path + ": " + line);
+				}
+				int term = term(pair[0].trim());
+				if (term < 0){
+					throw new IOException("Unknown term " + pair[0].trim() + " in " + path);
+				}
+				try{
+					weights[term] = Integer.parseInt(pair[1].trim());
+				}
+				catch (NumberFormatException e){
+					throw new IOException("Bad weight in " + path + ": " + line);
+				}
+			}
+		}
+		finally{
+			in.close();
+		}
+		return new Evaluation(weights);
+	}
+
+	/**
+	 * Write the weights to a file that load can read.
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(String path) throws IOException{
+		PrintWriter out = new PrintWriter(new FileWriter(path));
+		try{
+			for (int i = 0; i < TERMS; i++){
+				out.println(NAMES[i] + "=" + weights[i]);
+			}
+		}
+		finally{
+			out.close();
+		}
+		if (out.checkError()){
+			throw new IOException("Could not write " + path);
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return the index of the term with the given name, -1 if there is none
+	 */
+	public static int term(String name){
+		for (int i = 0; i < TERMS; i++){
+			if (NAMES[i].equals(name)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a copy of the weight of each term
+	 */
+	public int[] getWeights(){
+		return weights.clone();
+	}
+
+	/**
+	 * Score a board from the point of view of the given player.
+	 * @param board
+	 * @param id
+	 * @return
+	 */
+	public int evaluate(Bitboard board, int id){
+		int other = 3 - id;
+		int value = (weights[MAN] * (board.menCount(id) - board.menCount(other)))
+				+ (weights[KING] * (board.kingCount(id) - board.kingCount(other)))
+				+ (weights[BACK_RANK] * (board.guards(id) - board.guards(other)));
+		if (weights[ADVANCE] != 0){
+			value += weights[ADVANCE] * (advance(board, id) - advance(board, other));
+		}
+		if (weights[CENTER] != 0){
+			value += weights[CENTER] * (Integer.bitCount(board.pieces(id) & CENTER_SQUARES)
+					- Integer.bitCount(board.pieces(other) & CENTER_SQUARES));
+		}
+		if (weights[MOBILITY] != 0){
+			value += weights[MOBILITY] * (board.mobility(id) - board.mobility(other));
+		}
+		if (weights[DANGER] != 0){
+			value += weights[DANGER] * (board.danger(id) - board.danger(other));
+		}
+		return value;
+	}
+
+	/**
+	 * Work out every term for a board, so the score is the sum of each term
+	 * times its weight.
+	 * @param board
+	 * @param id the player the terms are worked out for
+	 * @param terms receives the value of each term
+	 */
+	public static void terms(Bitboard board, int id, int[] terms){
+		int other = 3 - id;
+		terms[MAN] = board.menCount(id) - board.menCount(other);
+		terms[KING] = board.kingCount(id) - board.kingCount(other);
+		terms[ADVANCE] = advance(board, id) - advance(board, other);
+		terms[BACK_RANK] = board.guards(id) - board.guards(other);
+		terms[CENTER] = Integer.bitCount(board.pieces(id) & CENTER_SQUARES)
+				- Integer.bitCount(board.pieces(other) & CENTER_SQUARES);
+		terms[MOBILITY] = board.mobility(id) - board.mobility(other);
+		terms[DANGER] = board.danger(id) - board.danger(other);
+	}
+
+	/**
+	 * @param board
+	 * @param id
+	 * @return the total number of rows the given player's men have moved
+	 * forward from their own back rank
+	 */
+	private static int advance(Bitboard board, int id){
+		int men = board.men(id);
+		int total = 0;
+		for (int r = 0; r < 8; r++){
+			int row = Integer.bitCount(men & (0xF << (r * 4)));
+			total += row * ((id == 1) ? (7 - r) : r);
+		}
+		return total;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder text = new StringBuilder(80);
+		for (int i = 0; i < TERMS; i++){
+			if (i > 0){
+				text.append(',');
+			}
+			text.append(NAMES[i]).append('=').append(weights[i]);
+		}
+		return text.toString();
+	}
+
+}
@@ -6,8 +6,9 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.HashMap;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.Executor;
+
+import javax.management.JMException;
 
 
 /**
@@ -15,7 +16,7 @@ import java.util.Observer;
  * @author Michael Washburn <mdw@michaelwashburn.com>
  *
  */
-public class GUIView extends JFrame implements Observer{
+public class GUIView extends JFrame implements GameListener{
 	
 	/* buttons holds all the buttons that represent spaces on the board*/
 	public HashMap<Cell,CButton> buttons;
@@ -26,6 +27,17 @@ public class GUIView extends JFrame implements Observer{
 	/* Stores the status text for the game */
 	private JLabel status;
 	
+	/* Shown while the AI is thinking */
+	private JProgressBar progress;
+	
+	/* runs listeners on the Swing event thread */
+	private static final Executor EVENT_THREAD = new Executor(){
+		@Override
+		public void execute(Runnable command){
+			SwingUtilities.invokeLater(command);
+		}
+	};
+	
 	/**
 	 * Constructs a new GUI for the checkers game
 	 * @param model
@@ -35,14 +47,13 @@ public class GUIView extends JFrame implements Observer{
 		super("Checkers by Michael Washburn");
 		this.setDefaultCloseOperation(EXIT_ON_CLOSE);
 		this.model = model;
-		model.addObserver(this);
 		JPanel board = new JPanel();
 		board.setLayout(new GridLayout(8,8));
 		this.buttons = new HashMap<Cell,CButton>();
 		//build hashmap of buttons reflecting spaces on the board
 		for (int r = 0; r < 8; r++){
 			for (int c = 0; c < 8; c++){
-				Cell cell = new Cell(r,c);
+				Cell cell = Cell.of(r,c);
 				CButton button = new CButton(r,c,model);
 				board.add(button);
 				buttons.put(cell, button);
@@ -57,6 +68,10 @@ public class GUIView extends JFrame implements Observer{
 		statusbar.setBorder(BorderFactory.createRaisedBevelBorder());
 		this.status = new JLabel("Status: Select the piece you want to move");
 		statusbar.add(status);
+		this.progress = new JProgressBar();
+		progress.setIndeterminate(true);
+		progress.setVisible(false);
+		statusbar.add(progress);
 		this.add(statusbar,BorderLayout.NORTH);
 		
 		//Build the lower bar containing the buttons.
@@ -68,6 +83,11 @@ public class GUIView extends JFrame implements Observer{
 		undo.addActionListener(new UndoListener(this.model));
 		lowBar.add(undo);
 		
+		//build a redo button to play undone moves again
+		JButton redo = new JButton("Redo");
+		redo.addActionListener(new RedoListener(this.model));
+		lowBar.add(redo);
+		
 		//build the reset button
 		JButton reset = new JButton("New Game");
 		reset.addActionListener(new ResetListener(this.model));
@@ -83,6 +103,13 @@ public class GUIView extends JFrame implements Observer{
 		this.setSize(500, 540);
 		this.setResizable(false);
 		this.setVisible(true);
+		//draw every square once, after that only the squares that change
+		for (int r = 0; r < 8; r++){
+			for (int c = 0; c < 8; c++){
+				getButton(r,c).update();
+			}
+		}
+		model.addListener(this, EVENT_THREAD);
 		model.update();
 		
 	}
@@ -94,26 +121,30 @@ public class GUIView extends JFrame implements Observer{
 	 * @return
 	 */
 	public CButton getButton(int r, int c){
-		return buttons.get(new Cell(r,c));
+		return buttons.get(Cell.of(r,c));
 	}
 	
 	/**
-	 * Updates the gui when the observable object notifies its observers.
-	 * This will iterate through updating all the buttons, the status, and 
-	 * check if the game has been won.
+	 * Updates the gui when the model changes. Changes made while the event
+	 * thread was busy arrive as one event.
+	 * This will update the buttons of the squares that changed, the status,
+	 * and check if the game has been won.
 	 */
 	@Override
-	public void update(Observable arg0, Object arg1) {
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				getButton(r,c).update();
-			}
+	public void gameChanged(GameEvent event) {
+		for (int rest = event.getChanged(); rest != 0; rest &= rest - 1){
+			int sq = Integer.numberOfTrailingZeros(rest);
+			getButton(Bitboard.row(sq), Bitboard.col(sq)).update();
 		}
+		progress.setVisible(model.ai.isThinking());
 		if ((this.model.hasWon() != 0)){
 			this.setEnabled(false);
 			new GameOver(this,this.model);
 			this.setEnabled(true);
 		}
+		else if (model.ai.isThinking()){
+			this.status.setText("Status: The computer is thinking");
+		}
 		else if (this.model.clicked.size() == 0){
 			this.status.setText("Status: Select the piece you want to move");
 		}
@@ -125,10 +156,19 @@ public class GUIView extends JFrame implements Observer{
 
 	/**
 	 * This will create the new instance of the game when the program is launched.
+	 * The AI's statistics can be watched over JMX, and run with
+	 * -Dcheckers.log=true to print a line for every move it makes.
 	 * @param args
 	 */
 	public static void main(String[] args) {
 		GameModel model = new GameModel();
+		model.ai.setLog(Boolean.getBoolean("checkers.log"));
+		try{
+			model.ai.getStats().register("ai");
+		}
+		catch (JMException e){
+			System.err.println("Could not register the AI statistics: " + e.getMessage());
+		}
 		new Instructions(new GUIView(model));
 	}
 
@@ -137,7 +177,8 @@ public class GUIView extends JFrame implements Observer{
 /**
  * This class represents the action to be performed when the next move button
  * is pressed. It will notify the ai to make a move and then change the turn
- * back to the user.
+ * back to the user. The ai thinks on its own thread so the window keeps
+ * working in the meantime.
  */
 class CommitListener implements ActionListener{
 	
@@ -161,8 +202,14 @@ class CommitListener implements ActionListener{
 			model.jumping = false;
 			model.movedOne = false;
 			model.nextMove();
-			model.ai.move();
-			model.nextMove();
+			model.ai.moveLater(new Runnable(){
+				@Override
+				public void run() {
+					model.nextMove();
+					model.update();
+				}
+			});
+			model.update();
 		}
 	}
 }
@@ -197,3 +244,18 @@ class UndoListener implements ActionListener{
 	}
 	
 }
+
+/**
+ * Represents the action for redoing a move that was undone.
+ */
+class RedoListener implements ActionListener{
+	private GameModel model;
+	public RedoListener(GameModel model){
+		this.model = model;
+	}
+	@Override
+	public void actionPerformed(ActionEvent arg0) {
+		model.redo();
+	}
+	
+}
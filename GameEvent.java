@@ -0,0 +1,118 @@
+/**
+ * This class describes how a game changed, from the position a listener last
+ * heard about to the current one. Squares are Bitboard squares and sets of
+ * squares are masks of them. Events are never changed after they are made,
+ * so listeners may read them on any thread.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class GameEvent {
+
+	private Bitboard before;//position before the change
+	private Bitboard board;//position after the change
+	private int turnBefore;//player to move before the change
+	private int turn;//player to move after the change
+	private int ply;//moves played in the history after the change
+	private int captured;//squares pieces were captured on by moves played
+	private int promoted;//squares pieces were crowned on by moves played
+	private boolean restarted;//if the history was started again
+	
+	/**
+	 * Construct a new event.
+	 * @param before position before the change
+	 * @param turnBefore player to move before the change
+	 * @param board position after the change
+	 * @param turn player to move after the change
+	 * @param ply moves played in the history after the change
+	 * @param captured squares pieces were captured on by moves played
+	 * @param promoted squares pieces were crowned on by moves played
+	 * @param restarted if the history was started again
+	 */
+	public GameEvent(Bitboard before, int turnBefore, Bitboard board, int turn, int ply,
+			int captured, int promoted, boolean restarted){
+		this.before = before;
+		this.turnBefore = turnBefore;
+		this.board = board;
+		this.turn = turn;
+		this.ply = ply;
+		this.captured = captured;
+		this.promoted = promoted;
+		this.restarted = restarted;
+	}
+	
+	/**
+	 * Join this event with the one that came after it.
+	 * @param next
+	 * @return an event going from the start of this one to the end of the next
+	 */
+	public GameEvent merge(GameEvent next){
+		return new GameEvent(before, turnBefore, next.board, next.turn, next.ply,
+				captured | next.captured, promoted | next.promoted, restarted || next.restarted);
+	}
+	
+	/**
+	 * @return the position after the change
+	 */
+	public Bitboard getBoard(){
+		return new Bitboard(board);
+	}
+	
+	/**
+	 * @return the squares whose contents are different after the change
+	 */
+	public int getChanged(){
+		return (board.men(1) ^ before.men(1)) | (board.kings(1) ^ before.kings(1))
+				| (board.men(2) ^ before.men(2)) | (board.kings(2) ^ before.kings(2));
+	}
+	
+	/**
+	 * @return the squares pieces were captured on by moves played
+	 */
+	public int getCaptured(){
+		return captured;
+	}
+	
+	/**
+	 * @return the squares pieces were crowned on by moves played
+	 */
+	public int getPromoted(){
+		return promoted;
+	}
+	
+	/**
+	 * @return the player to move after the change
+	 */
+	public int getTurn(){
+		return turn;
+	}
+	
+	/**
+	 * @return true if a different player is to move after the change
+	 */
+	public boolean isTurnChanged(){
+		return turn != turnBefore;
+	}
+	
+	/**
+	 * @return the number of moves played in the history after the change
+	 */
+	public int getPly(){
+		return ply;
+	}
+	
+	/**
+	 * @return true if the game was started again, by a new game or a new
+	 * position being set up
+	 */
+	public boolean isRestarted(){
+		return restarted;
+	}
+	
+	@Override
+	public String toString(){
+		return "GameEvent(changed=" + Integer.toHexString(getChanged()) + ", captured=" + Integer.toHexString(captured)
+				+ ", promoted=" + Integer.toHexString(promoted) + ", turn=" + turn + ", ply=" + ply
+				+ (restarted ? ", restarted" : "") + ")";
+	}
+	
+}
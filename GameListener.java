@@ -0,0 +1,17 @@
+/**
+ * This interface is implemented by anything that wants to know when a game
+ * changes, such as the GUIView. Listeners are added to a GameModel with
+ * addListener.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public interface GameListener {
+
+	/**
+	 * Called after the game changed. If the game changed several times
+	 * before the listener could be called the changes arrive as one event.
+	 * @param event
+	 */
+	public void gameChanged(GameEvent event);
+	
+}
@@ -1,18 +1,75 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Observable;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * This class holds all information necessary to play a game of checkers 
  * except a UI. This is the model for the GUIView.
+ * Listeners are told about every change with a GameEvent. Each listener runs
+ * on its own executor, and changes made before it got to run are joined into
+ * one event, so a slow listener never holds up the game.
  * @author Michael Washburn <mdw@michaelwashburn.com>
  *
  */
-public class GameModel extends Observable{
+public class GameModel {
 	
-	private HashMap<Cell,Disc> board;
-	public LinkedList<HashMap<Cell,Disc>> moves; //list of all moves made (used for undo)
+	/**
+	 * A listener with the executor it runs on and the changes it has not
+	 * heard about yet.
+	 */
+	private static class Subscriber implements Runnable{
+		GameListener listener;
+		Executor executor;
+		GameEvent pending;//changes not yet delivered, null if none
+		
+		Subscriber(GameListener listener, Executor executor){
+			this.listener = listener;
+			this.executor = executor;
+		}
+		
+		/**
+		 * Add an event to the ones waiting, and ask the executor to deliver
+		 * them if it was not already asked.
+		 * @param event
+		 */
+		void post(GameEvent event){
+			boolean waiting;
+			synchronized (this){
+				waiting = pending != null;
+				pending = waiting ? pending.merge(event) : event;
+			}
+			if (!waiting){
+				executor.execute(this);
+			}
+		}
+		
+		@Override
+		public void run(){
+			GameEvent event;
+			synchronized (this){
+				event = pending;
+				pending = null;
+			}
+			if (event != null){
+				listener.gameChanged(event);
+			}
+		}
+	}
+	
+	/* runs a listener on the thread that changed the game */
+	private static final Executor SAME_THREAD = new Executor(){
+		@Override
+		public void execute(Runnable command){
+			command.run();
+		}
+	};
+	
+	private Bitboard board;
+	private History history;//every move made, used for undo and redo
+	private CopyOnWriteArrayList<Subscriber> listeners;//told about changes, null until one is added
+	private Bitboard published;//position in the last event sent
+	private int publishedTurn;//player to move in the last event sent
 	
 	public ArrayList<Integer> clicked;//currently clicked buttons
 	public boolean jumping;//if a player is in a jumping sequence
@@ -22,43 +79,32 @@ public class GameModel extends Observable{
 	
 	private boolean humanTurn;
 	
-	private int player1Pieces;//count of pieces player has left
-	private int player2Pieces;
 	public AI ai;
 	
 	/**
 	 * Construct a new instance of the game with the board completely initialized.
 	 */
 	public GameModel(){
+		this(true);
+	}
+	
+	/**
+	 * Construct a new instance of the game with the board completely initialized.
+	 * @param ai if the model should build its own AI for player 2, false when
+	 * the moves are made by AIs built elsewhere
+	 */
+	public GameModel(boolean ai){
 		//initialize variables
-		this.ai = new AI(this);
+		this.ai = ai ? new AI(this) : null;
 		this.humanTurn = true;
-		this.player1Pieces = 12;
-		this.player2Pieces = 12;
 		this.jumping = false;
 		this.jumper = null;
 		this.movedOne = false;
 		this.gameOver = true;
 		clicked = new ArrayList<Integer>();
-		//create board
-		board = new HashMap<Cell, Disc>();
-		//for each space on the board
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				Cell cell = new Cell(r,c);
-				Disc disc = null;
-				//if this space should have a player 2 piece on it set the disc to player 2
-				if (((r == 0) && (c % 2 == 1)) || ((r == 1) && (c % 2 == 0))){ 
-					disc = new Disc(2);
-				}
-				//if it should be a player 1 piece make it so
-				else if (((r == 7) && (c % 2 == 0)) || ((r == 6) && (c % 2 == 1))){
-					disc = new Disc(1);
-				}
-				board.put(cell, disc);
-			}
-		}
-		moves = new LinkedList<HashMap<Cell,Disc>>();
+		//create board with player 2 on the top two rows and player 1 on the bottom two
+		board = Bitboard.initial();
+		history = new History(board);
 	}
 	
 	/**
@@ -66,25 +112,8 @@ public class GameModel extends Observable{
 	 * @param board
 	 * @return
 	 */
-	public HashMap<Cell,Disc> copyBoard(HashMap<Cell,Disc> board){
-		HashMap<Cell,Disc> boardCopy = new HashMap<Cell,Disc>();
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				Disc cur = board.get(new Cell(r,c));
-				Disc copy;
-				if (cur == null){
-					copy = null;
-				}
-				else{
-					copy = new Disc(cur.get());
-					if (cur.isKing()){
-						copy.kingMe();
-					}
-				}
-				boardCopy.put(new Cell(r,c), copy);
-			}
-		}
-		return boardCopy;
+	public Bitboard copyBoard(Bitboard board){
+		return new Bitboard(board);
 	}
 	
 	/**
@@ -92,55 +121,117 @@ public class GameModel extends Observable{
 	 * Reinitialize all variables as well.
 	 */
 	public void reset(){
+		if (ai != null){
+			ai.cancel();
+		}
 		this.humanTurn = true;
-		this.player1Pieces = 12;
-		this.player2Pieces = 12;
 		this.jumping = false;
 		this.jumper = null;
 		this.movedOne = false;
 		clicked = new ArrayList<Integer>();
-		board = new HashMap<Cell, Disc>();
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				Cell cell = new Cell(r,c);
-				Disc disc = null;
-				if (((r == 0) && (c % 2 == 1)) || ((r == 1) && (c % 2 == 0))){ 
-					disc = new Disc(2);
-				}
-				else if (((r == 7) && (c % 2 == 0)) || ((r == 6) && (c % 2 == 1))){
-					disc = new Disc(1);
+		board = Bitboard.initial();
+		history.clear(board);
+		fire(0, 0, true);
+	}
+	
+	/**
+	 * update the gui
+	 */
+	public void update(){
+		fire(0, 0, false);
+	}
+	
+	/**
+	 * Add a listener that is told about changes on the thread that made them.
+	 * @param listener
+	 */
+	public void addListener(GameListener listener){
+		addListener(listener, SAME_THREAD);
+	}
+	
+	/**
+	 * Add a listener that is told about changes on the given executor.
+	 * Changes made while an event is waiting for the executor are added to
+	 * that event instead of making another.
+	 * @param listener
+	 * @param executor
+	 */
+	public void addListener(GameListener listener, Executor executor){
+		if (listeners == null){
+			listeners = new CopyOnWriteArrayList<Subscriber>();
+			published = copyBoard(board);
+			publishedTurn = humanTurn ? 1 : 2;
+		}
+		listeners.add(new Subscriber(listener, executor));
+	}
+	
+	/**
+	 * Stop telling the given listener about changes.
+	 * @param listener
+	 */
+	public void removeListener(GameListener listener){
+		if (listeners != null){
+			Iterator<Subscriber> iterator = listeners.iterator();
+			while (iterator.hasNext()){
+				Subscriber subscriber = iterator.next();
+				if (subscriber.listener == listener){
+					listeners.remove(subscriber);
 				}
-				board.put(cell, disc);
 			}
 		}
-		setChanged();
-		notifyObservers();
 	}
 	
 	/**
-	 * update the gui
+	 * Tell every listener what changed since the last event.
+	 * @param captured squares pieces were captured on by moves played
+	 * @param promoted squares pieces were crowned on by moves played
+	 * @param restarted if the history was started again
 	 */
-	public void update(){
-		setChanged();
-		notifyObservers();
+	private void fire(int captured, int promoted, boolean restarted){
+		if ((listeners == null) || listeners.isEmpty()){
+			return;
+		}
+		Bitboard after = copyBoard(board);
+		int turn = humanTurn ? 1 : 2;
+		GameEvent event = new GameEvent(published, publishedTurn, after, turn, history.getPly(),
+				captured, promoted, restarted);
+		published = after;
+		publishedTurn = turn;
+		Iterator<Subscriber> iterator = listeners.iterator();
+		while (iterator.hasNext()){
+			iterator.next().post(event);
+		}
 	}
 	
 	/**
 	 * return to the caller the current board configuration for the model.
 	 * @return
 	 */
-	public HashMap<Cell,Disc> getBoard(){
+	public Bitboard getBoard(){
 		return this.board;
 	}
 	
+	/**
+	 * @return the zobrist key of the current board and the player to move
+	 */
+	public long getKey(){
+		return board.getKey() ^ (humanTurn ? 0 : Bitboard.SIDE);
+	}
+	
+	/**
+	 * @return every move made in this game
+	 */
+	public History getHistory(){
+		return history;
+	}
+	
 	/**
 	 * Construct a new instance of this model given another model.
+	 * The copy only holds the board and does not remember the moves made.
 	 * @param config
 	 */
 	public GameModel(GameModel config){
 		this.humanTurn = config.humanTurn;
-		this.player1Pieces = config.player1Pieces;
-		this.player2Pieces = config.player2Pieces;
 		clicked = new ArrayList<Integer>(config.clicked);
 		this.board = copyBoard(config.board);
 	}
@@ -149,10 +240,10 @@ public class GameModel extends Observable{
 	 * @return whether a player has won. 0 if no one won.
 	 */
 	public int hasWon(){
-		if (player1Pieces == 0){
+		if (board.pieces(1) == 0){
 			return 2;
 		}
-		else if (player2Pieces == 0){
+		else if (board.pieces(2) == 0){
 			return 1;
 		}
 		else{
@@ -172,6 +263,9 @@ public class GameModel extends Observable{
 	 */
 	public void nextMove(){
 		humanTurn = !humanTurn;
+		if (history != null){
+			history.endTurn();
+		}
 	}
 	
 	/**
@@ -190,21 +284,114 @@ public class GameModel extends Observable{
 	}
 	
 	/**
-	 * Undo the last move that was stored in the moves linked list
+	 * Undo the last move that was stored in the history.
+	 * Moves are taken back a whole turn at a time until it is the player's
+	 * turn again, so both the AI's reply and the player's turn before it are
+	 * taken back, and a turn the player has not finished is taken back on its
+	 * own. If the AI is still thinking it is stopped and only the player's
+	 * turn is taken back.
 	 */
 	public void undo(){
+		if ((ai != null) && ai.cancel()){
+			this.humanTurn = true;
+		}
+		this.jumping = false;
+		this.jumper = null;
+		this.movedOne = false;
+		if (history.canUndo()){
+			this.clicked.clear();
+			Bitboard previous = copyBoard(this.board);
+			if ((undoTurn(previous) == 2) && history.canUndo()){
+				undoTurn(previous);
+			}
+			this.humanTurn = true;
+			show(previous, 0, 0, false);
+		}
+	}
+	
+	/**
+	 * Take back the moves of the last turn in the history.
+	 * @param board changed to the position before the turn
+	 * @return the player who made the turn
+	 */
+	private int undoTurn(Bitboard board){
+		long move;
+		do{
+			move = history.undo(board);
+		} while (history.canUndo() && !history.endsTurn(history.getPly() - 1));
+		return board.owner(Move.from(move));
+	}
+	
+	/**
+	 * Play again the moves taken back by the last undo, a whole turn at a
+	 * time until it is the player's turn again. A turn the player finished
+	 * with no reply after it waits for the player to commit it again, and a
+	 * turn the player had not finished can be carried on. Nothing is played
+	 * again while the AI is thinking.
+	 */
+	public void redo(){
+		if (((ai != null) && ai.isThinking()) || !history.canRedo()){
+			return;
+		}
+		this.clicked.clear();
+		Bitboard next = copyBoard(this.board);
+		int[] changed = new int[2];
+		long move = redoTurn(next, changed);
+		if ((next.owner(Move.to(move)) == 1) && history.endsTurn(history.getPly() - 1) && history.canRedo()){
+			move = redoTurn(next, changed);
+		}
+		this.jumping = false;
+		this.jumper = null;
 		this.movedOne = false;
-		if (moves.size() > 0){
-			if (moves.size() % 2 == 0){
-				this.clicked.clear();
-				moves.remove();
-				setBoard(moves.remove());
+		this.humanTurn = true;
+		int to = Move.to(move);
+		if (next.owner(to) == 1){
+			//the player has moved and only needs to commit the turn, or jump on
+			if (!history.endsTurn(history.getPly() - 1) && Move.isCapture(move)){
+				this.jumping = true;
+				this.jumper = Cell.of(Bitboard.row(to), Bitboard.col(to));
 			}
 			else{
-				this.clicked.clear();
-				setBoard(moves.remove());
+				this.movedOne = true;
 			}
 		}
+		show(next, changed[0], changed[1], false);
+	}
+	
+	/**
+	 * Play again the moves of the next turn taken back.
+	 * @param board changed to the position after the turn
+	 * @param changed squares captured on and crowned on are added to its two entries
+	 * @return the last move of the turn
+	 */
+	private long redoTurn(Bitboard board, int[] changed){
+		long move;
+		do{
+			move = history.redo(board);
+			changed[0] |= Move.captured(move);
+			changed[1] |= Move.isPromotion(move) ? (1 << Move.to(move)) : 0;
+		} while (history.canRedo() && !history.endsTurn(history.getPly() - 1));
+		return move;
+	}
+	
+	/**
+	 * @param ply
+	 * @return the position after the given number of moves of this game
+	 */
+	public Bitboard positionAt(int ply){
+		return history.position(ply);
+	}
+	
+	/**
+	 * Make a move on the current board and remember it in the history as a
+	 * whole turn.
+	 * @param move
+	 */
+	public void play(long move){
+		Bitboard next = copyBoard(this.board);
+		next.makeMove(move);
+		history.push(move, true);
+		show(next, Move.captured(move), Move.isPromotion(move) ? (1 << Move.to(move)) : 0, false);
 	}
 	
 	/**
@@ -220,19 +407,26 @@ public class GameModel extends Observable{
 	 */
 	public int move(int r1, int c1, int r2, int c2){
 		int moved = 0;
-		HashMap<Cell,Disc> copy = copyBoard(this.board);
+		//what the move changes is read before the board changes
+		int from = Bitboard.square(r1,c1);
+		int over = Bitboard.square((r1 + r2)/2, (c1 + c2)/2);
+		boolean king = (from >= 0) && this.board.isKing(from);
+		boolean overKing = (over >= 0) && this.board.isKing(over);
 		if (simpleMove(this,1,r1,c1,r2,c2)){
 			moved = 1;
 		}
 		else if (simpleJump(this,1,r1,c1,r2,c2)){
 			moved = 2;
-			player2Pieces--;
 		}
 		if (moved != 0){
 			if (r2 == 0){
-				get(r2,c2).kingMe();
+				kingMe(r2,c2);
 			}
-			this.moves.addFirst(copy);
+			int captured = (moved == 2) ? (1 << over) : 0;
+			int to = Bitboard.square(r2,c2);
+			//the turn ends when the player commits it
+			history.push(Move.encode(from, to, (r2 == 0) && !king, captured, overKing ? captured : 0), false);
+			fire(captured, ((r2 == 0) && !king) ? (1 << to) : 0, false);
 		}
 		return moved;
 	}
@@ -249,17 +443,32 @@ public class GameModel extends Observable{
 	 * @return
 	 */
 	public boolean moveAI(GameModel config,int r1, int c1, int r2, int c2){
+		return movePiece(config,2,r1,c1,r2,c2);
+	}
+	
+	/**
+	 * This move method moves a piece for either player on the given configuration.
+	 * It will return true if the move was successful and kings the piece if it
+	 * reached the far side of the board.
+	 * @param config
+	 * @param id
+	 * @param r1
+	 * @param c1
+	 * @param r2
+	 * @param c2
+	 * @return
+	 */
+	public boolean movePiece(GameModel config, int id, int r1, int c1, int r2, int c2){
 		boolean moved = false;
-		if (simpleMove(config,2,r1,c1,r2,c2)){
+		if (simpleMove(config,id,r1,c1,r2,c2)){
 			moved = true;
 		}
-		else if (simpleJump(config,2,r1,c1,r2,c2)){
+		else if (simpleJump(config,id,r1,c1,r2,c2)){
 			moved = true;
-			config.player1Pieces--;
 		}
 		if (moved){
-			if (r2 == 7){
-				config.get(r2,c2).kingMe();
+			if (((id == 1) && (r2 == 0)) || ((id == 2) && (r2 == 7))){
+				config.kingMe(r2,c2);
 			}
 		}
 		return moved;
@@ -328,80 +537,95 @@ public class GameModel extends Observable{
 	
 	/**
 	 * This method will return all possible next configuration of this particular 
-	 * space if there is a piece in it.
+	 * space if there is a player 2 piece in it.
 	 * @param config
 	 * @param r
 	 * @param c
 	 * @return an arrayList of configurations
 	 */
 	public ArrayList<GameModel> cellNeighbors(GameModel config, int r, int c){
-		ArrayList<GameModel> neighbors = new ArrayList<GameModel>();
-		if (config.isOccupied(r, c) && config.get(r, c).get() == 2){
-			for (int i = 1; i <= 2; i++){
-				GameModel neighbor = new GameModel(config);
-				//Check if we can move to any adjacent tiles 1 or 2 spaces away at diagonals.
-				//if we can add that config to the neighbors.
-				if (neighbor.moveAI(neighbor, r, c, r - i, c - i)){
-					neighbors.add(neighbor);
-				}
-				neighbor = new GameModel(config);
-				if (neighbor.moveAI(neighbor, r, c, r - i, c + i)){
-					neighbors.add(neighbor);
-				}
-				neighbor = new GameModel(config);
-				if (neighbor.moveAI(neighbor, r, c, r + i, c - i)){
-					neighbors.add(neighbor);
-				}
-				neighbor = new GameModel(config);
-				if (neighbor.moveAI(neighbor, r, c, r + i, c + i)){
-					neighbors.add(neighbor);
-				}
-			}
+		return cellNeighbors(config,2,r,c);
+	}
+	
+	/**
+	 * This method will return all possible next configuration of this particular 
+	 * space if there is a piece belonging to the given player in it.
+	 * @param config
+	 * @param id
+	 * @param r
+	 * @param c
+	 * @return an arrayList of configurations
+	 */
+	public ArrayList<GameModel> cellNeighbors(GameModel config, int id, int r, int c){
+		int sq = Bitboard.square(r,c);
+		if (sq < 0){
+			return new ArrayList<GameModel>();
+		}
+		return neighbors(config, id, 1 << sq);
+	}
+	
+	/**
+	 * Build the configuration after each legal move of the given player from the
+	 * given squares. Only legal moves are copied, using the board's move generator.
+	 * A chain of jumps is a single move, so its configuration is the one after
+	 * the last jump.
+	 * @param config
+	 * @param id
+	 * @param from mask of squares to move from
+	 * @return an arrayList of configurations
+	 */
+	private ArrayList<GameModel> neighbors(GameModel config, int id, int from){
+		long[] moves = new long[Bitboard.MAX_MOVES];
+		int count = config.board.generate(id, from, moves, 0);
+		ArrayList<GameModel> neighbors = new ArrayList<GameModel>(count);
+		for (int i = 0; i < count; i++){
+			GameModel neighbor = new GameModel(config);
+			neighbor.board.makeMove(moves[i]);
+			neighbors.add(neighbor);
 		}
 		return neighbors;
 	}
 	
 	/**
-	 * get all possible next configurations of the current board.
+	 * get all possible next configurations of the current board for player 2.
 	 * @param config
 	 * @return
 	 */
 	public ArrayList<GameModel> getNeighbors(GameModel config){
-		ArrayList<GameModel> neighbors = new ArrayList<GameModel>();
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				neighbors.addAll(cellNeighbors(config,r,c));
-			}
-		}
-		return neighbors;
+		return getNeighbors(config,2);
+	}
+	
+	/**
+	 * get all possible next configurations of the current board for the given player.
+	 * @param config
+	 * @param id
+	 * @return
+	 */
+	public ArrayList<GameModel> getNeighbors(GameModel config, int id){
+		return neighbors(config, id, Bitboard.ALL);
+	}
+	
+	/**
+	 * Set the current board for this game to the board passed in, and start
+	 * the history again from it.
+	 * Piece counts are read straight from the board so nothing needs recounting.
+	 * @param board
+	 */
+	public void setBoard(Bitboard board){
+		history.clear(board);
+		show(board, 0, 0, true);
 	}
 	
 	/**
-	 * Set the current board for this game to the board passed in.
-	 * This will also adjust variables as necessary.
+	 * Show a board reached by moves already in the history.
 	 * @param board
+	 * @param captured squares pieces were captured on getting there
+	 * @param promoted squares pieces were crowned on getting there
+	 * @param restarted if the history was started again
 	 */
-	public void setBoard(HashMap<Cell,Disc> board){
+	private void show(Bitboard board, int captured, int promoted, boolean restarted){
 		this.board = board;
-		int p1 = 0;
-		int p2 = 0;
-		
-		for (int r = 0; r < 8; r++){
-			for (int c = 0; c < 8; c++){
-				if (get(r,c) != null){
-					if (get(r,c).get() == 1){
-						p1++;
-					}
-					else{
-						p2++;
-					}
-				}
-			}
-		}
-		this.player1Pieces = p1;
-		this.player2Pieces = p2;
-		setChanged();
-		notifyObservers();
+		fire(captured, promoted, restarted);
 	}
 	
 	/**
@@ -409,7 +633,7 @@ public class GameModel extends Observable{
 	 * @return
 	 */
 	public int p1Pieces(){
-		return player1Pieces;
+		return board.count(1);
 	}
 	
 	/**
@@ -417,37 +641,58 @@ public class GameModel extends Observable{
 	 * @return
 	 */
 	public int p2Pieces(){
-		return player2Pieces;
+		return board.count(2);
 	}
 	
 	/**
 	 * Setter for a space on the board.
-	 * Sets this space to hold the given disc object
+	 * Sets this space to hold the given disc object.
+	 * Light squares can never hold a piece so setting them does nothing.
 	 * @param r
 	 * @param c
 	 * @param disc
 	 */
 	public void set(int r, int c, Disc disc){
-		Cell cell = new Cell(r,c);
-		board.put(cell, disc);
+		int sq = Bitboard.square(r,c);
+		if (sq >= 0){
+			if (disc == null){
+				board.clear(sq);
+			}
+			else{
+				board.set(sq, disc.get(), disc.isKing());
+			}
+		}
 	}
 	
 	/**
 	 * Gets the disc, if any, at the given spot on the board.
+	 * The disc returned is one of the shared Disc constants.
 	 * @param r
 	 * @param c
 	 * @return
 	 */
 	public Disc get(int r, int c){
-		if ((r >= 0) && (r < 8) && (c >= 0) && (c < 8)){
-			Cell cell = new Cell(r,c);
-			return board.get(cell);
+		int sq = Bitboard.square(r,c);
+		if ((sq >= 0) && (board.owner(sq) != 0)){
+			return Disc.of(board.owner(sq), board.isKing(sq));
 		}
 		else{
 			return null;
 		}
 	}
 	
+	/**
+	 * Turn the piece at the given spot into a king.
+	 * @param r
+	 * @param c
+	 */
+	public void kingMe(int r, int c){
+		int sq = Bitboard.square(r,c);
+		if (sq >= 0){
+			board.promote(sq);
+		}
+	}
+	
 	/**
 	 * Returns true if the given spot is occupied by a player
 	 * @param r
@@ -455,8 +700,82 @@ public class GameModel extends Observable{
 	 * @return
 	 */
 	public boolean isOccupied(int r, int c){
-		Cell cell = new Cell(r,c);
-		return (board.get(cell) != null);
+		int sq = Bitboard.square(r,c);
+		return (sq >= 0) && ((board.occupied() & (1 << sq)) != 0);
+	}
+	
+	/**
+	 * @return the current position and the player to move as FEN
+	 */
+	public String toFEN(){
+		return Notation.toFEN(board, humanTurn ? 1 : 2);
+	}
+	
+	/**
+	 * Set up the position written as FEN, forgetting the moves made so far.
+	 * @param fen
+	 */
+	public void setFEN(String fen){
+		Bitboard next = Notation.parseFEN(fen);
+		this.humanTurn = Notation.fenSide(fen) == 1;
+		this.jumping = false;
+		this.jumper = null;
+		this.movedOne = false;
+		this.clicked.clear();
+		setBoard(next);
+	}
+	
+	/**
+	 * @return the game so far as PDN. A chain of jumps made one click at a
+	 * time is written as one move.
+	 */
+	public String toPDN(){
+		Bitboard start = history.getStart();
+		long[] played = new long[history.getPly()];
+		int count = 0;
+		for (int i = 0; i < played.length; i++){
+			long move = history.get(i);
+			if ((count > 0) && !history.endsTurn(i - 1) && Move.isCapture(move)
+					&& Move.isCapture(played[count - 1]) && (Move.to(played[count - 1]) == Move.from(move))){
+				//another jump of the same piece, so add it to the chain
+				long chain = played[count - 1];
+				played[count - 1] = Move.encode(Move.from(chain), Move.to(move),
+						Move.isPromotion(chain) || Move.isPromotion(move),
+						Move.captured(chain) | Move.captured(move),
+						Move.capturedKings(chain) | Move.capturedKings(move));
+			}
+			else{
+				played[count++] = move;
+			}
+		}
+		int first = humanTurn ? 1 : 2;
+		if (count > 0){
+			first = start.owner(Move.from(played[0]));
+		}
+		return Notation.toPDN(start, first, played, count, hasWon());
+	}
+	
+	/**
+	 * Replay the game written as PDN, keeping every move for undo.
+	 * @param pdn
+	 */
+	public void setPDN(String pdn){
+		ArrayList<Long> played = new ArrayList<Long>();
+		String start = Notation.parsePDN(pdn, played);
+		Bitboard next = Notation.parseFEN(start);
+		int id = Notation.fenSide(start);
+		this.jumping = false;
+		this.jumper = null;
+		this.movedOne = false;
+		this.clicked.clear();
+		history.clear(next);
+		for (int i = 0; i < played.size(); i++){
+			next.makeMove(played.get(i));
+			history.push(played.get(i), true);
+			id = 3 - id;
+		}
+		this.humanTurn = id == 1;
+		show(next, 0, 0, true);
 	}
 	
 	/**
@@ -465,20 +784,17 @@ public class GameModel extends Observable{
 	 */
 	@Override
 	public String toString(){
-		String display = "\n";
+		StringBuilder display = new StringBuilder(76);
+		display.append('\n');
 		for (int r = 0; r < 8; r++){
 			for (int c = 0; c < 8; c++){
 				Disc disc = get(r,c);
-				String string = "0";
-				if (disc != null){
-					string = disc.toString();
-				}
-				display += string;
+				display.append((disc != null) ? disc.toString() : "0");
 			}
-			display += "\n";
+			display.append('\n');
 		}
-		display += "\n";
-		return display;	
+		display.append('\n');
+		return display.toString();
 	}
 	
 }
@@ -0,0 +1,204 @@
+/**
+ * This class remembers the moves of a game so they can be taken back and
+ * played again. Only the packed moves are kept, one long per ply, since a
+ * move holds everything needed to unmake it. Every CHECKPOINT_INTERVAL
+ * plies a copy of the position is kept as well, made the first time it is
+ * needed, so any earlier position can be rebuilt without replaying the
+ * whole game.
+ * Moves that were taken back are kept until a different move is played, so
+ * they can be played again with redo.
+ * A turn can take several moves, since the player jumps one click at a
+ * time, so each move also records whether the turn passed to the other
+ * player after it. Undo and redo use this to stop where a turn starts.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class History {
+
+	/* plies between the positions kept whole */
+	public static final int CHECKPOINT_INTERVAL = 32;
+
+	private long[] moves;//every move recorded, including ones that can be redone
+	private boolean[] ends;//if the turn passed to the other player after each move
+	private int size;//number of moves recorded
+	private int ply;//number of moves currently played, the rest can be redone
+	private Bitboard[] checkpoints;//position before every CHECKPOINT_INTERVAL-th move
+	private int checkpointCount;//number of checkpoints made so far
+
+	/**
+	 * Construct a new history of a game starting from the given position.
+	 * @param start
+	 */
+	public History(Bitboard start){
+		this.moves = new long[64];
+		this.ends = new boolean[64];
+		this.checkpoints = new Bitboard[4];
+		clear(start);
+	}
+
+	/**
+	 * Forget every move and start again from the given position.
+	 * @param start
+	 */
+	public void clear(Bitboard start){
+		size = 0;
+		ply = 0;
+		checkpoints[0] = new Bitboard(start);
+		for (int i = 1; i < checkpointCount; i++){
+			checkpoints[i] = null;
+		}
+		checkpointCount = 1;
+	}
+
+	/**
+	 * Record a move played after the current ply. Moves that could have been
+	 * redone are forgotten.
+	 * @param move
+	 * @param endsTurn if the turn passes to the other player after the move
+	 */
+	public void push(long move, boolean endsTurn){
+		if (ply < size){
+			size = ply;
+			//checkpoints after this ply belong to the forgotten moves
+			int keep = Math.min(checkpointCount, (ply / CHECKPOINT_INTERVAL) + 1);
+			for (int i = keep; i < checkpointCount; i++){
+				checkpoints[i] = null;
+			}
+			checkpointCount = keep;
+		}
+		if (size == moves.length){
+			long[] grown = new long[moves.length * 2];
+			System.arraycopy(moves, 0, grown, 0, size);
+			moves = grown;
+			boolean[] grownEnds = new boolean[moves.length];
+			System.arraycopy(ends, 0, grownEnds, 0, size);
+			ends = grownEnds;
+		}
+		ends[size] = endsTurn;
+		moves[size++] = move;
+		ply = size;
+	}
+
+	/**
+	 * Record that the turn passed to the other player after the last move
+	 * played.
+	 */
+	public void endTurn(){
+		if (ply > 0){
+			ends[ply - 1] = true;
+		}
+	}
+
+	/**
+	 * @param i
+	 * @return true if the turn passed to the other player after the move at the given ply
+	 */
+	public boolean endsTurn(int i){
+		if ((i < 0) || (i >= size)){
+			throw new IndexOutOfBoundsException("ply " + i + " of " + size);
+		}
+		return ends[i];
+	}
+
+	/**
+	 * Take back the last move played on the given board.
+	 * @param board the current position, changed to the one before
+	 * @return the move taken back or Move.NONE if there is none
+	 */
+	public long undo(Bitboard board){
+		if (ply == 0){
+			return Move.NONE;
+		}
+		long move = moves[--ply];
+		board.unmakeMove(move);
+		return move;
+	}
+
+	/**
+	 * Play again the next move that was taken back.
+	 * @param board the current position, changed to the one after
+	 * @return the move played or Move.NONE if there is none
+	 */
+	public long redo(Bitboard board){
+		if (ply == size){
+			return Move.NONE;
+		}
+		long move = moves[ply++];
+		board.makeMove(move);
+		return move;
+	}
+
+	/**
+	 * Rebuild the position after the given number of plies, starting from the
+	 * closest checkpoint before it.
+	 * @param target
+	 * @return a new board holding the position
+	 */
+	public Bitboard position(int target){
+		if ((target < 0) || (target > size)){
+			throw new IndexOutOfBoundsException("ply " + target + " of " + size);
+		}
+		int k = Math.min(target / CHECKPOINT_INTERVAL, checkpointCount - 1);
+		Bitboard board = new Bitboard(checkpoints[k]);
+		for (int i = k * CHECKPOINT_INTERVAL; i < target; i++){
+			board.makeMove(moves[i]);
+			//remember checkpoints passed on the way for next time
+			if (((i + 1) % CHECKPOINT_INTERVAL == 0) && ((i + 1) / CHECKPOINT_INTERVAL == checkpointCount)){
+				if (checkpointCount == checkpoints.length){
+					Bitboard[] grown = new Bitboard[checkpoints.length * 2];
+					System.arraycopy(checkpoints, 0, grown, 0, checkpointCount);
+					checkpoints = grown;
+				}
+				checkpoints[checkpointCount++] = new Bitboard(board);
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * @param i
+	 * @return the move played at the given ply
+	 */
+	public long get(int i){
+		if ((i < 0) || (i >= size)){
+			throw new IndexOutOfBoundsException("ply " + i + " of " + size);
+		}
+		return moves[i];
+	}
+
+	/**
+	 * @return the position the game started from
+	 */
+	public Bitboard getStart(){
+		return new Bitboard(checkpoints[0]);
+	}
+
+	/**
+	 * @return the number of moves currently played
+	 */
+	public int getPly(){
+		return ply;
+	}
+
+	/**
+	 * @return the number of moves recorded, including ones that can be redone
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return true if a move can be taken back
+	 */
+	public boolean canUndo(){
+		return ply > 0;
+	}
+
+	/**
+	 * @return true if a move that was taken back can be played again
+	 */
+	public boolean canRedo(){
+		return ply < size;
+	}
+
+}
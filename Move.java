@@ -0,0 +1,213 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This class packs a move into a single long so move lists can be stored in
+ * plain arrays. A move holds the square it starts on, the square it ends on,
+ * whether the piece is kinged, the squares of the pieces it captures and which
+ * of those captured pieces were kings, which is everything needed to take the
+ * move back again.
+ * Bits 0-4 hold the start square, bits 5-9 the end square, bit 10 is set on a
+ * promotion, bits 11-22 mark which captured pieces were kings (in order of
+ * their squares) and bits 32-63 hold the mask of captured squares.
+ * A list of moves played from a position can be written to a ByteBuffer in
+ * one byte per move, the place of the move in the list Bitboard.generate
+ * makes for that position.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Move {
+
+	/* value used when there is no move */
+	public static final long NONE = 0;
+
+	private static final int TO_SHIFT = 5;
+	private static final long PROMOTION = 1L << 10;
+	private static final int KINGS_SHIFT = 11;
+	private static final int CAPTURED_SHIFT = 32;
+
+	/* written in place of a move's index when the move is not generated, followed by the whole move */
+	private static final int RAW = 0xFF;
+
+	/**
+	 * Pack a move.
+	 * @param from
+	 * @param to
+	 * @param promotion
+	 * @param captured mask of captured squares
+	 * @param capturedKings mask of captured squares that held kings
+	 * @return
+	 */
+	public static long encode(int from, int to, boolean promotion, int captured, int capturedKings){
+		long move = from | (to << TO_SHIFT) | ((long) captured << CAPTURED_SHIFT);
+		if (promotion){
+			move |= PROMOTION;
+		}
+		//mark the kings in the order their squares appear in the captured mask
+		int bit = 0;
+		for (int rest = captured; rest != 0; rest &= rest - 1){
+			if ((capturedKings & rest & -rest) != 0){
+				move |= 1L << (KINGS_SHIFT + bit);
+			}
+			bit++;
+		}
+		return move;
+	}
+
+	/**
+	 * @param move
+	 * @return the square the moving piece starts on
+	 */
+	public static int from(long move){
+		return (int) move & 31;
+	}
+
+	/**
+	 * @param move
+	 * @return the square the moving piece ends on
+	 */
+	public static int to(long move){
+		return (int) (move >>> TO_SHIFT) & 31;
+	}
+
+	/**
+	 * @param move
+	 * @return true if the moving piece is kinged by this move
+	 */
+	public static boolean isPromotion(long move){
+		return (move & PROMOTION) != 0;
+	}
+
+	/**
+	 * @param move
+	 * @return the mask of squares whose pieces are captured
+	 */
+	public static int captured(long move){
+		return (int) (move >>> CAPTURED_SHIFT);
+	}
+
+	/**
+	 * @param move
+	 * @return true if the move captures anything
+	 */
+	public static boolean isCapture(long move){
+		return captured(move) != 0;
+	}
+
+	/**
+	 * @param move
+	 * @return the mask of captured squares that held kings
+	 */
+	public static int capturedKings(long move){
+		int kings = 0;
+		int bit = 0;
+		for (int rest = captured(move); rest != 0; rest &= rest - 1){
+			if ((move & (1L << (KINGS_SHIFT + bit))) != 0){
+				kings |= rest & -rest;
+			}
+			bit++;
+		}
+		return kings;
+	}
+
+	/**
+	 * Shorten a move to 24 bits so it can be stored in the transposition
+	 * table. The start and end squares are kept and the captured squares are
+	 * folded into the remaining bits. Never 0 for a real move.
+	 * @param move
+	 * @return
+	 */
+	public static int id(long move){
+		int captured = captured(move);
+		int fold = (captured ^ (captured >>> 14) ^ (captured >>> 28)) & 0x3FFF;
+		return ((int) move & 0x3FF) | (fold << 10);
+	}
+
+	/**
+	 * Write the moves played from a position into a buffer without moving the
+	 * buffer's position: the number of moves as a short, then one byte for
+	 * each move holding its place among the moves generated for the player to
+	 * move. A move that is not generated, such as a chain of jumps stopped
+	 * part way, is written as RAW followed by the whole move as a long.
+	 * @param buffer
+	 * @param index where in the buffer to write
+	 * @param start position the moves are played from, not changed
+	 * @param id the player to move first
+	 * @param moves
+	 * @param count number of moves to write
+	 * @return the number of bytes written
+	 */
+	public static int writeList(ByteBuffer buffer, int index, Bitboard start, int id, long[] moves, int count){
+		Bitboard board = new Bitboard(start);
+		long[] generated = new long[Bitboard.MAX_MOVES];
+		int at = index + 2;
+		buffer.putShort(index, (short) count);
+		for (int i = 0; i < count; i++){
+			int mover = board.owner(from(moves[i]));
+			int n = board.generate(mover, generated, 0);
+			int found = RAW;
+			for (int k = 0; (k < n) && (k < RAW); k++){
+				if (generated[k] == moves[i]){
+					found = k;
+					break;
+				}
+			}
+			//a move by the player who was not expected to move is written whole too
+			if (mover != id){
+				found = RAW;
+			}
+			buffer.put(at++, (byte) found);
+			if (found == RAW){
+				buffer.putLong(at, moves[i]);
+				at += 8;
+			}
+			board.makeMove(moves[i]);
+			id = 3 - mover;
+		}
+		return at - index;
+	}
+
+	/**
+	 * Read moves written by writeList without moving the buffer's position.
+	 * @param buffer
+	 * @param index where in the buffer the list starts
+	 * @param start position the moves are played from, not changed
+	 * @param id the player to move first
+	 * @param moves receives the moves, must be long enough to hold them
+	 * @return the number of moves read
+	 */
+	public static int readList(ByteBuffer buffer, int index, Bitboard start, int id, long[] moves){
+		Bitboard board = new Bitboard(start);
+		long[] generated = new long[Bitboard.MAX_MOVES];
+		int count = buffer.getShort(index) & 0xFFFF;
+		int at = index + 2;
+		for (int i = 0; i < count; i++){
+			int found = buffer.get(at++) & 0xFF;
+			if (found == RAW){
+				moves[i] = buffer.getLong(at);
+				at += 8;
+			}
+			else{
+				int n = board.generate(id, generated, 0);
+				if (found >= n){
+					throw new IllegalArgumentException("Move " + found + " of " + n + " does not exist");
+				}
+				moves[i] = generated[found];
+			}
+			int mover = board.owner(from(moves[i]));
+			board.makeMove(moves[i]);
+			id = 3 - mover;
+		}
+		return count;
+	}
+
+	/**
+	 * @param move
+	 * @return the move written as start and end squares numbered 1 to 32,
+	 * joined by x for captures and - for simple moves. The squares a capture
+	 * lands on between them are left out, Notation.writeMove writes them.
+	 */
+	public static String toString(long move){
+		return (from(move) + 1) + (isCapture(move) ? "x" : "-") + (to(move) + 1);
+	}
+
+}
@@ -0,0 +1,355 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class reads and writes positions as FEN and games as PDN, the text
+ * formats used to share checkers games. Squares are numbered 1 to 32 from
+ * the top left, the same as Move.toString, so square n is Bitboard square
+ * n - 1. Player 2 starts at the top on squares 1 to 8 and is written as
+ * Black (B), player 1 starts at the bottom and is written as White (W).
+ * A FEN position is the player to move and the squares of each player's
+ * pieces, kings marked with K, for example W:W25,26,K27:B1,2,3. Runs of
+ * squares such as 1-8 are also read.
+ * A capture is written with every square the piece lands on, like 9x18x27,
+ * and read back one jump at a time, so chains the player stopped early or
+ * went on with after being kinged are kept as they were played. A capture
+ * written with only its two ends is still read when just one chain of the
+ * piece joins them.
+ * Run with a PDN file to check it is written back to the same moves:
+ * java Notation file
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Notation {
+
+	/* a move written as squares joined by - or x, like 9-14 or 9x18x27 */
+	private static final Pattern MOVE = Pattern.compile("\\d+(?:[-x]\\d+)+");
+
+	/* the result at the end of a game, removed before reading moves */
+	private static final Pattern RESULT = Pattern.compile("(?<!\\d)(?:1-0|0-1|1/2-1/2)(?!\\d)");
+
+	/* game type of English draughts, the rules this game plays by */
+	public static final String GAME_TYPE = "21";
+
+	/* start of a standard game, 12 pieces each with Black to move, used when
+	 * a PDN file with a GameType tag has no FEN tag */
+	public static final String STANDARD_START = "B:W21-32:B1-12";
+
+	/* a tag pair, like [FEN "W:W25:B1"] */
+	private static final Pattern TAG = Pattern.compile("\\[\\s*(\\w+)\\s+\"([^\"]*)\"\\s*\\]");
+
+	/**
+	 * Write a position as FEN.
+	 * @param board
+	 * @param id the player to move
+	 * @return
+	 */
+	public static String toFEN(Bitboard board, int id){
+		StringBuilder fen = new StringBuilder(80);
+		fen.append((id == 1) ? 'W' : 'B');
+		for (int side = 1; side <= 2; side++){
+			fen.append(':').append((side == 1) ? 'W' : 'B');
+			boolean first = true;
+			for (int rest = board.pieces(side); rest != 0; rest &= rest - 1){
+				int sq = Integer.numberOfTrailingZeros(rest);
+				if (!first){
+					fen.append(',');
+				}
+				if (board.isKing(sq)){
+					fen.append('K');
+				}
+				fen.append(sq + 1);
+				first = false;
+			}
+		}
+		return fen.toString();
+	}
+
+	/**
+	 * Read the pieces of a position written as FEN.
+	 * @param fen
+	 * @return
+	 */
+	public static Bitboard parseFEN(String fen){
+		String[] sections = fen.trim().replace(".", "").split(":");
+		fenSide(fen);//check the player to move is written
+		Bitboard board = new Bitboard();
+		for (int i = 1; i < sections.length; i++){
+			String section = sections[i].trim();
+			if (section.length() == 0){
+				continue;
+			}
+			int id = side(section.charAt(0), fen);
+			String[] squares = section.substring(1).split(",");
+			for (int k = 0; k < squares.length; k++){
+				String square = squares[k].trim();
+				if (square.length() == 0){
+					continue;
+				}
+				boolean king = square.charAt(0) == 'K';
+				if (king){
+					square = square.substring(1);
+				}
+				int dash = square.indexOf('-');
+				int first = number(square.substring(0, (dash < 0) ? square.length() : dash), fen);
+				int last = (dash < 0) ? first : number(square.substring(dash + 1), fen);
+				for (int n = first; n <= last; n++){
+					board.set(n - 1, id, king);
+				}
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Read the player to move of a position written as FEN.
+	 * @param fen
+	 * @return
+	 */
+	public static int fenSide(String fen){
+		String text = fen.trim();
+		if (text.length() == 0){
+			throw new IllegalArgumentException("Empty FEN");
+		}
+		return side(text.charAt(0), fen);
+	}
+
+	/**
+	 * @param ch W or B
+	 * @param fen text being read, for the error message
+	 * @return the player written as the given letter
+	 */
+	private static int side(char ch, String fen){
+		if (ch == 'W'){
+			return 1;
+		}
+		else if (ch == 'B'){
+			return 2;
+		}
+		throw new IllegalArgumentException("Unknown color '" + ch + "' in FEN: " + fen);
+	}
+
+	/**
+	 * @param text
+	 * @param fen text being read, for the error message
+	 * @return the square number written in the text
+	 */
+	private static int number(String text, String fen){
+		int n;
+		try{
+			n = Integer.parseInt(text.trim());
+		}
+		catch (NumberFormatException e){
+			throw new IllegalArgumentException("Bad square '" + text + "' in FEN: " + fen);
+		}
+		if ((n < 1) || (n > 32)){
+			throw new IllegalArgumentException("Square " + n + " is off the board in FEN: " + fen);
+		}
+		return n;
+	}
+
+	/**
+	 * Write a game as PDN. The FEN tag is always written, since a PDN
+	 * reader takes a game without one to start from the standard position,
+	 * not from the smaller one this game starts from.
+	 * @param start position the game started from
+	 * @param id the player who moved first
+	 * @param moves moves played, in order
+	 * @param count number of moves
+	 * @param result 1 or 2 for the winner, 0 if the game is not over
+	 * @return
+	 */
+	public static String toPDN(Bitboard start, int id, long[] moves, int count, int result){
+		String score = (result == 1) ? "1-0" : (result == 2) ? "0-1" : "*";
+		StringBuilder pdn = new StringBuilder(64 + (count * 8));
+		pdn.append("[Event \"Checkers\"]\n");
+		pdn.append("[Result \"").append(score).append("\"]\n");
+		pdn.append("[GameType \"").append(GAME_TYPE).append("\"]\n");
+		pdn.append("[FEN \"").append(toFEN(start, id)).append("\"]\n");
+		pdn.append('\n');
+		Bitboard board = new Bitboard(start);
+		int number = 1;
+		for (int i = 0; i < count; i++){
+			int mover = board.owner(Move.from(moves[i]));
+			if ((i == 0) || (mover == 1)){
+				pdn.append(number).append((mover == 1) ? ". " : "... ");
+			}
+			pdn.append(writeMove(board, moves[i])).append(' ');
+			if (mover == 2){
+				number++;
+			}
+			board.makeMove(moves[i]);
+		}
+		pdn.append(score).append('\n');
+		return pdn.toString();
+	}
+
+	/**
+	 * Write a move as squares numbered 1 to 32, with every square a capture
+	 * lands on.
+	 * @param board position the move is made from
+	 * @param move
+	 * @return
+	 */
+	public static String writeMove(Bitboard board, long move){
+		int[] squares = new int[Bitboard.MAX_CHAIN + 1];
+		int n = board.path(move, squares);
+		if (n == 0){
+			return Move.toString(move);
+		}
+		StringBuilder text = new StringBuilder(n * 3);
+		for (int i = 0; i < n; i++){
+			if (i > 0){
+				text.append('x');
+			}
+			text.append(squares[i] + 1);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Read a move written as squares joined by - or x. A capture is rebuilt
+	 * one jump at a time and each jump must be legal.
+	 * @param board position the move is made from
+	 * @param id the player to move
+	 * @param token
+	 * @return the move or Move.NONE if the player can not make it
+	 */
+	public static long parseMove(Bitboard board, int id, String token){
+		String[] numbers = token.split("[-x]");
+		int[] squares = new int[numbers.length];
+		for (int i = 0; i < numbers.length; i++){
+			squares[i] = Integer.parseInt(numbers[i]) - 1;
+			if ((squares[i] < 0) || (squares[i] >= 32)){
+				return Move.NONE;
+			}
+		}
+		int from = squares[0];
+		int to = squares[squares.length - 1];
+		if (board.owner(from) != id){
+			return Move.NONE;
+		}
+		boolean capture = token.indexOf('x') >= 0;
+		if (capture){
+			long move = board.jumps(squares, squares.length);
+			if ((move != Move.NONE) || (squares.length > 2)){
+				return move;
+			}
+		}
+		else if (squares.length > 2){
+			return Move.NONE;
+		}
+		//a simple move, or a capture written with only its ends
+		long[] generated = new long[Bitboard.MAX_MOVES];
+		int n = board.generate(id, 1 << from, generated, 0);
+		long found = Move.NONE;
+		for (int i = 0; i < n; i++){
+			if ((Move.to(generated[i]) == to) && (Move.isCapture(generated[i]) == capture)){
+				if (found != Move.NONE){
+					//two chains join these squares, so the move does not say which
+					return Move.NONE;
+				}
+				found = generated[i];
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Read a game written as PDN. Comments in braces are skipped. Without a
+	 * FEN tag a game with a GameType tag starts from the standard position,
+	 * and one without starts from this game's start with player 1 to move,
+	 * as older versions wrote them.
+	 * @param pdn
+	 * @param moves receives the moves played
+	 * @return the position the game started from, with the player who moved
+	 * first, as FEN
+	 */
+	public static String parsePDN(String pdn, ArrayList<Long> moves){
+		Bitboard board = Bitboard.initial();
+		int id = 1;
+		String text = pdn.replaceAll("\\{[^}]*\\}", " ");
+		Matcher tag = TAG.matcher(text);
+		int body = 0;
+		boolean fen = false;
+		boolean typed = false;
+		while (tag.find()){
+			if (tag.group(1).equals("FEN")){
+				board = parseFEN(tag.group(2));
+				id = fenSide(tag.group(2));
+				fen = true;
+			}
+			else if (tag.group(1).equals("GameType")){
+				typed = true;
+			}
+			body = tag.end();
+		}
+		if (!fen && typed){
+			board = parseFEN(STANDARD_START);
+			id = fenSide(STANDARD_START);
+		}
+		String start = toFEN(board, id);
+		Matcher move = MOVE.matcher(RESULT.matcher(text.substring(body)).replaceAll(" "));
+		while (move.find()){
+			String token = move.group();
+			long found = parseMove(board, id, token);
+			if (found == Move.NONE){
+				throw new IllegalArgumentException("Illegal move " + token + " in PDN for position "
+						+ toFEN(board, id));
+			}
+			moves.add(found);
+			board.makeMove(found);
+			id = 3 - id;
+		}
+		return start;
+	}
+
+	/**
+	 * Check that the games in a PDN file are written back to the same moves:
+	 * java Notation file
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException{
+		if (args.length < 1){
+			System.err.println("Usage: java Notation file");
+			System.exit(1);
+		}
+		StringBuilder pdn = new StringBuilder();
+		BufferedReader in = new BufferedReader(new FileReader(args[0]));
+		try{
+			String line;
+			while ((line = in.readLine()) != null){
+				pdn.append(line).append('\n');
+			}
+		}
+		finally{
+			in.close();
+		}
+		ArrayList<Long> read = new ArrayList<Long>();
+		String start = parsePDN(pdn.toString(), read);
+		long[] moves = new long[read.size()];
+		for (int i = 0; i < moves.length; i++){
+			moves[i] = read.get(i);
+		}
+		Bitboard board = parseFEN(start);
+		Bitboard end = new Bitboard(board);
+		for (int i = 0; i < moves.length; i++){
+			end.makeMove(moves[i]);
+		}
+		int result = (end.pieces(1) == 0) ? 2 : (end.pieces(2) == 0) ? 1 : 0;
+		String written = toPDN(board, fenSide(start), moves, moves.length, result);
+		ArrayList<Long> again = new ArrayList<Long>();
+		String startAgain = parsePDN(written, again);
+		if (!startAgain.equals(start) || !again.equals(read)){
+			System.out.println("MISMATCH: " + args[0] + " was written back as\n" + written);
+			System.exit(1);
+		}
+		System.out.println(moves.length + " moves written back the same");
+	}
+
+}
@@ -0,0 +1,111 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class looks up the move to play in opening positions in a book built
+ * by OpeningBookBuilder. The book file is mapped into memory like the
+ * endgame database, and its entries are sorted by key so a position is found
+ * with a binary search without reading the whole file.
+ * File layout: magic, version, number of entries and an unused int, then
+ * each entry as the position's key and its packed move (longs), in order of
+ * key. The key is the board's zobrist key, xored with Bitboard.SIDE when
+ * player 2 is to move, the same key the search uses.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class OpeningBook {
+
+	/* file the AI looks for when it starts */
+	public static final String DEFAULT_FILE = "book.bin";
+
+	/* first int of every book file */
+	public static final int MAGIC = 0x434B4F42;
+
+	/* version of the file layout */
+	public static final int VERSION = 1;
+
+	/* bytes used by the start of the file and by each entry after it */
+	static final int HEADER_SIZE = 16;
+	static final int ENTRY_SIZE = 16;
+
+	private MappedByteBuffer buffer;
+	private int count;//number of entries
+
+	/**
+	 * Open a book file built by OpeningBookBuilder.
+	 * @param path
+	 * @throws IOException if the file can not be read or is not a book
+	 */
+	public OpeningBook(String path) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+		try{
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE){
+				throw new IOException(path + " is too large to map");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally{
+			file.close();
+		}
+		if ((buffer.capacity() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC)){
+			throw new IOException(path + " is not an opening book");
+		}
+		if (buffer.getInt(4) != VERSION){
+			throw new IOException(path + " was built by a different version");
+		}
+		count = buffer.getInt(8);
+		if (buffer.capacity() < HEADER_SIZE + ((long) count * ENTRY_SIZE)){
+			throw new IOException(path + " is cut short");
+		}
+	}
+
+	/**
+	 * @return the number of positions in the book
+	 */
+	public int size(){
+		return count;
+	}
+
+	/**
+	 * Look up the book move for a position. The move is checked against the
+	 * moves the piece on its square can make, so a different position with
+	 * the same key can never play an illegal move. Nothing is allocated, so
+	 * the book can be probed before every search.
+	 * @param board
+	 * @param id the player to move
+	 * @param moves buffer the moves are generated into to check the book
+	 * move, at least Bitboard.MAX_MOVES long
+	 * @return the move or Move.NONE if the position is not in the book
+	 */
+	public long probe(Bitboard board, int id, long[] moves){
+		long key = board.getKey() ^ ((id == 2) ? Bitboard.SIDE : 0);
+		int lo = 0;
+		int hi = count - 1;
+		while (lo <= hi){
+			int mid = (lo + hi) >>> 1;
+			long found = buffer.getLong(HEADER_SIZE + (mid * ENTRY_SIZE));
+			if (found < key){
+				lo = mid + 1;
+			}
+			else if (found > key){
+				hi = mid - 1;
+			}
+			else{
+				long move = buffer.getLong(HEADER_SIZE + (mid * ENTRY_SIZE) + 8);
+				int n = board.generate(id, 1 << Move.from(move), moves, 0);
+				for (int i = 0; i < n; i++){
+					if (moves[i] == move){
+						return move;
+					}
+				}
+				return Move.NONE;
+			}
+		}
+		return Move.NONE;
+	}
+
+}
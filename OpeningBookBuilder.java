@@ -0,0 +1,143 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class builds the opening book read by OpeningBook. Every position
+ * reached in the first plies of a game, with either player to move, is
+ * searched deeply once and the best move is written to the book, so the AI
+ * can play those positions without searching during a game.
+ * Run with: java OpeningBookBuilder [plies] [depth] [file]
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class OpeningBookBuilder {
+
+	/* plies from the start covered when none is given */
+	public static final int DEFAULT_PLIES = 6;
+
+	/* depth each position is searched to when none is given */
+	public static final int DEFAULT_DEPTH = 14;
+
+	private int plies;
+	private int depth;
+	private TreeMap<Long, Long> entries;//move for each key, kept in order of key
+
+	/**
+	 * Construct a new builder.
+	 * @param plies positions up to this many plies from the start are searched
+	 * @param depth depth each position is searched to
+	 */
+	public OpeningBookBuilder(int plies, int depth){
+		this.plies = plies;
+		this.depth = depth;
+		this.entries = new TreeMap<Long, Long>();
+	}
+
+	/**
+	 * Search every position in the first plies and remember its best move.
+	 */
+	public void build(){
+		ArrayList<Bitboard> positions = new ArrayList<Bitboard>();
+		ArrayList<Integer> players = new ArrayList<Integer>();
+		collect(Bitboard.initial(), 1, 0, new HashMap<Long, Integer>(), positions, players);
+		System.out.println(positions.size() + " positions to search");
+		Search search = new Search(new TranspositionTable(64));
+		long start = System.nanoTime();
+		for (int i = 0; i < positions.size(); i++){
+			Bitboard board = positions.get(i);
+			int id = players.get(i);
+			search.getTable().newSearch();
+			long move = search.search(board, id, depth, 0);
+			if (move != Move.NONE){
+				entries.put(board.getKey() ^ ((id == 2) ? Bitboard.SIDE : 0), move);
+			}
+			if (((i + 1) % 100) == 0){
+				System.out.println(String.format("%d searched, %.1fs", i + 1, (System.nanoTime() - start) / 1e9));
+			}
+		}
+	}
+
+	/**
+	 * Add the given position and every position reached from it before the
+	 * last ply, each once.
+	 * @param board
+	 * @param id the player to move
+	 * @param ply plies from the start
+	 * @param seen fewest plies each position added was reached in
+	 * @param positions list to add to
+	 * @param players player to move in each position added
+	 */
+	private void collect(Bitboard board, int id, int ply, HashMap<Long, Integer> seen,
+			ArrayList<Bitboard> positions, ArrayList<Integer> players){
+		long key = board.getKey() ^ ((id == 2) ? Bitboard.SIDE : 0);
+		if (ply >= plies){
+			return;
+		}
+		Integer reached = seen.get(key);
+		if (reached == null){
+			positions.add(new Bitboard(board));
+			players.add(id);
+		}
+		else if (reached <= ply){
+			return;
+		}
+		//reached sooner than before, so the positions after it are looked at again
+		seen.put(key, ply);
+		long[] moves = new long[Bitboard.MAX_MOVES];
+		int count = board.generate(id, moves, 0);
+		for (int i = 0; i < count; i++){
+			board.makeMove(moves[i]);
+			collect(board, 3 - id, ply + 1, seen, positions, players);
+			board.unmakeMove(moves[i]);
+		}
+	}
+
+	/**
+	 * Write the book file, entries in order of key.
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(String path) throws IOException{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		try{
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeInt(OpeningBook.VERSION);
+			out.writeInt(entries.size());
+			out.writeInt(0);
+			Iterator<Map.Entry<Long, Long>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()){
+				Map.Entry<Long, Long> entry = iterator.next();
+				out.writeLong(entry.getKey());
+				out.writeLong(entry.getValue());
+			}
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * Build a book from the command line.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException{
+		int plies = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PLIES;
+		int depth = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_DEPTH;
+		String path = (args.length > 2) ? args[2] : OpeningBook.DEFAULT_FILE;
+		long start = System.nanoTime();
+		OpeningBookBuilder builder = new OpeningBookBuilder(plies, depth);
+		builder.build();
+		builder.write(path);
+		System.out.println(String.format("wrote %d positions to %s in %.1fs",
+				builder.entries.size(), path, (System.nanoTime() - start) / 1e9));
+	}
+
+}
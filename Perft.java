@@ -0,0 +1,229 @@
+import java.util.ArrayList;
+
+/**
+ * This class counts every position reachable in a given number of plies
+ * (perft), with both players moving in turn using the board's move generator.
+ * The count measures how fast moves are generated and, since it only depends
+ * on the rules, proves a faster generator still produces the same moves.
+ * The validate option also counts with the original rules of GameModel,
+ * trying movePiece on a copy of the model for every candidate square and
+ * following every jump with the further jumps the same piece can make, and
+ * reports any depth where the two counts differ. A whole chain of jumps is one
+ * ply. The counts follow the rules of this game (player 1 moves first,
+ * captures are not forced) so they are compared against the table below
+ * rather than published checkers numbers.
+ * Run with: java Perft depth [-divide] [-validate] [-side id] [-board board]
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Perft {
+
+	/* leaf counts from the starting position with player 1 to move, by depth */
+	public static final long[] START_COUNTS = {1, 7, 49, 392, 3136, 27210, 235633, 2137143, 19295074, 179021753};
+
+	private Bitboard board;
+	private long[][] moves;//moves generated at each ply
+
+	/**
+	 * Construct a new counter for the given board.
+	 * @param board
+	 */
+	public Perft(Bitboard board){
+		this.board = new Bitboard(board);
+		this.moves = new long[Search.MAX_PLY][Bitboard.MAX_MOVES];
+	}
+
+	/**
+	 * Count the positions reached after the given number of plies.
+	 * @param id player to move
+	 * @param depth
+	 * @return
+	 */
+	public long count(int id, int depth){
+		return count(id, depth, 0);
+	}
+
+	/**
+	 * Count the positions reached after the given number of plies.
+	 * @param id
+	 * @param depth
+	 * @param ply
+	 * @return
+	 */
+	private long count(int id, int depth, int ply){
+		if (depth == 0){
+			return 1;
+		}
+		long[] list = moves[ply];
+		int n = board.generate(id, list, 0);
+		if (depth == 1){
+			return n;
+		}
+		long total = 0;
+		for (int i = 0; i < n; i++){
+			board.makeMove(list[i]);
+			total += count(3 - id, depth - 1, ply + 1);
+			board.unmakeMove(list[i]);
+		}
+		return total;
+	}
+
+	/**
+	 * Print the count below each move of the player to move, then the total.
+	 * @param id
+	 * @param depth
+	 * @return the total
+	 */
+	public long divide(int id, int depth){
+		long[] list = new long[Bitboard.MAX_MOVES];
+		int n = board.generate(id, list, 0);
+		long total = 0;
+		for (int i = 0; i < n; i++){
+			board.makeMove(list[i]);
+			long nodes = count(3 - id, depth - 1, 1);
+			board.unmakeMove(list[i]);
+			System.out.println(Move.toString(list[i]) + ": " + nodes);
+			total += nodes;
+		}
+		return total;
+	}
+
+	/**
+	 * Count the positions reached after the given number of plies using the
+	 * original rules of the model: every square one or two steps away on a
+	 * diagonal is tried with movePiece on a copy of the model, and each jump
+	 * is followed by every further jump of the same piece.
+	 * @param config
+	 * @param id
+	 * @param depth
+	 * @return
+	 */
+	public static long reference(GameModel config, int id, int depth){
+		if (depth == 0){
+			return 1;
+		}
+		ArrayList<GameModel> neighbors = new ArrayList<GameModel>();
+		for (int r = 0; r < 8; r++){
+			for (int c = 0; c < 8; c++){
+				if (config.isOccupied(r, c) && (config.get(r, c).get() == id)){
+					int first = neighbors.size();//chains that end the same way are only counted once per piece
+					for (int i = 1; i <= 2; i++){
+						for (int dr = -i; dr <= i; dr += 2 * i){
+							for (int dc = -i; dc <= i; dc += 2 * i){
+								GameModel neighbor = new GameModel(config);
+								if (neighbor.movePiece(neighbor, id, r, c, r + dr, c + dc)){
+									if (i == 1){
+										neighbors.add(neighbor);
+									}
+									else{
+										chains(neighbor, id, r + dr, c + dc, config.getBoard().isKing(Bitboard.square(r, c)), neighbors, first);
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		if (depth == 1){
+			return neighbors.size();
+		}
+		long total = 0;
+		for (int i = 0; i < neighbors.size(); i++){
+			total += reference(neighbors.get(i), 3 - id, depth - 1);
+		}
+		return total;
+	}
+
+	/**
+	 * Add the configurations at the end of every chain of jumps that goes on
+	 * from a piece that just jumped, using the original rules of the model.
+	 * A chain ends when the piece can not jump again or a man was just kinged.
+	 * @param config configuration after the last jump
+	 * @param id
+	 * @param r square the piece landed on
+	 * @param c
+	 * @param king if the piece was a king before the last jump
+	 * @param neighbors list to add to
+	 * @param first index of the first configuration added for this piece
+	 */
+	private static void chains(GameModel config, int id, int r, int c, boolean king,
+			ArrayList<GameModel> neighbors, int first){
+		boolean jumped = false;
+		boolean now = config.getBoard().isKing(Bitboard.square(r, c));
+		if (king || !now){
+			for (int dr = -2; dr <= 2; dr += 4){
+				for (int dc = -2; dc <= 2; dc += 4){
+					GameModel next = new GameModel(config);
+					if (next.simpleJump(next, id, r, c, r + dr, c + dc)){
+						if (((id == 1) && (r + dr == 0)) || ((id == 2) && (r + dr == 7))){
+							next.kingMe(r + dr, c + dc);
+						}
+						jumped = true;
+						chains(next, id, r + dr, c + dc, now, neighbors, first);
+					}
+				}
+			}
+		}
+		if (!jumped){
+			for (int i = first; i < neighbors.size(); i++){
+				if (neighbors.get(i).getBoard().equals(config.getBoard())){
+					return;
+				}
+			}
+			neighbors.add(config);
+		}
+	}
+
+	/**
+	 * Run perft from the command line.
+	 * @param args
+	 */
+	public static void main(String[] args){
+		if (args.length == 0){
+			System.out.println("usage: java Perft depth [-divide] [-validate] [-side id] [-board board]");
+			return;
+		}
+		int depth = Math.max(1, Integer.parseInt(args[0]));
+		boolean divide = false;
+		boolean validate = false;
+		int id = 1;
+		Bitboard start = Bitboard.initial();
+		boolean custom = false;
+		for (int i = 1; i < args.length; i++){
+			if (args[i].equals("-divide")){
+				divide = true;
+			}
+			else if (args[i].equals("-validate")){
+				validate = true;
+			}
+			else if (args[i].equals("-side")){
+				id = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-board")){
+				start = Bitboard.parse(args[++i]);
+				custom = true;
+			}
+		}
+		Perft perft = new Perft(start);
+		long begin = System.nanoTime();
+		long nodes = divide ? perft.divide(id, depth) : perft.count(id, depth);
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		System.out.println("depth " + depth + ": " + nodes + " nodes in "
+				+ String.format("%.3f", seconds) + "s (" + (long) (nodes / Math.max(seconds, 1e-9)) + " nodes/s)");
+		if (!custom && (id == 1) && (depth < START_COUNTS.length) && (START_COUNTS[depth] != nodes)){
+			System.out.println("MISMATCH: expected " + START_COUNTS[depth] + " from the starting position");
+		}
+		if (validate){
+			GameModel model = new GameModel(false);
+			model.setBoard(new Bitboard(start));
+			for (int d = 1; d <= depth; d++){
+				long fast = new Perft(start).count(id, d);
+				long slow = reference(model, id, d);
+				System.out.println("depth " + d + ": generator " + fast + ", reference " + slow
+						+ ((fast == slow) ? "" : "  MISMATCH"));
+			}
+		}
+	}
+
+}
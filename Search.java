@@ -0,0 +1,594 @@
+/**
+ * This class searches the game tree for the best move using a depth limited
+ * negamax search with alpha-beta pruning. Both players' replies are explored
+ * by making and taking back moves on a single board, with the moves of each
+ * ply written into buffers that are allocated once, so the search does not
+ * create objects while it runs. The search deepens one ply at a time so it can
+ * be stopped at a deadline and still return the best move of the last
+ * completed depth. Results are remembered in a transposition table so
+ * positions reached by different orders of moves are only searched once.
+ * Moves are scored once when they are generated and searched best first, so
+ * the moves most likely to cause a cutoff are tried before the others. Quiet
+ * moves that caused a cutoff are remembered as killers of their ply, tried
+ * right after captures and kinging, and every quiet cutoff adds to a history
+ * score of its from and to squares which orders the remaining quiet moves.
+ * When an endgame database is given, positions with few enough pieces are
+ * looked up instead of searched, scored as a win or loss in the number of
+ * plies the database holds.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Search {
+
+	/* score of a won position, reduced by the number of plies it takes to get there */
+	public static final int WIN = 100000;
+
+	/* deepest line the search will ever look at */
+	public static final int MAX_PLY = 64;
+
+	/* scores at least this far from 0 are wins or losses, found by the search or
+	 * read from the tablebase further down the line */
+	private static final int WIN_BAND = WIN - MAX_PLY - Tablebase.MAX_DISTANCE;
+
+	/* move ordering scores, the table's best move is always tried first */
+	private static final int ORDER_HASH = Integer.MAX_VALUE;
+	private static final int ORDER_CAPTURE = 1000;
+	private static final int ORDER_KING_CAPTURE = 500;
+	private static final int ORDER_PROMOTION = 300;
+	private static final int ORDER_DANGER = 100;
+	private static final int ORDER_KILLER = 200;
+
+	/* history scores are halved once one reaches this, and fit below a step of the ordering score */
+	private static final int HISTORY_LIMIT = 1 << 16;
+
+	/* for each helper, how many depths in a row it searches and then skips,
+	 * and how far into that pattern it starts, so helpers spread over
+	 * different depths instead of repeating the main search */
+	private static final int[] SKIP_SIZE = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+	private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+
+	/* how many nodes are visited between checks of the clock */
+	private static final int CHECK_INTERVAL = 256;
+
+	private long nodes;//positions visited by the last search
+	private int score;//score of the last search for the player to move
+	private int depthReached;//deepest iteration that completed
+	private long probes;//transposition table lookups
+	private long hits;//lookups that found the position
+	private long expanded;//positions whose moves were searched
+	private long cutoffs;//positions whose search stopped early on a beta cutoff
+
+	private long deadline;//System.nanoTime() at which to stop, 0 for no limit
+	private long nodeLimit;//most positions a search may visit, 0 for no limit
+	private long nodeStop;//positions at which the running search stops, 0 for no limit
+	private boolean stopped;//if the current iteration ran out of time
+	private volatile boolean cancelled;//if another thread asked this search to stop
+
+	private Bitboard position;//board moves are made and taken back on
+	private long[][] moves;//moves generated at each ply
+	private int[][] scores;//ordering score of each generated move
+	private int[][] killers;//ids of the last two quiet moves to cause a cutoff at each ply
+	private int[][] history;//score of quiet cutoffs by from and to square
+
+	private long[][] pv;//principal variation found at each ply
+	private int[] pvLength;
+	private long[] line;//best line of the last completed iteration
+	private int lineLength;
+
+	private TranspositionTable table;//null if positions should not be remembered
+	private Tablebase tablebase;//null if endgames should be searched
+	private Evaluation evaluation;//scores the positions at the end of each line
+	private int helper;//0 for a main search, otherwise the number of the helper thread
+
+	/**
+	 * Construct a new search without a transposition table.
+	 */
+	public Search(){
+		this(null);
+	}
+
+	/**
+	 * Construct a new search that remembers positions in the given table.
+	 * Several searches may share one table. Call newSearch on the table before
+	 * each move so entries from older moves are replaced first.
+	 * @param table
+	 */
+	public Search(TranspositionTable table){
+		this.moves = new long[MAX_PLY][Bitboard.MAX_MOVES];
+		this.scores = new int[MAX_PLY][Bitboard.MAX_MOVES];
+		this.killers = new int[MAX_PLY][2];
+		this.history = new int[32][32];
+		this.pv = new long[MAX_PLY][MAX_PLY];
+		this.pvLength = new int[MAX_PLY];
+		this.line = new long[MAX_PLY];
+		this.lineLength = 0;
+		this.table = table;
+		this.evaluation = new Evaluation();
+	}
+
+	/**
+	 * Set the table this search remembers positions in, null for none.
+	 * @param table
+	 */
+	public void setTable(TranspositionTable table){
+		this.table = table;
+	}
+
+	/**
+	 * @return the table this search remembers positions in
+	 */
+	public TranspositionTable getTable(){
+		return table;
+	}
+
+	/**
+	 * Set the endgame database positions are looked up in, null for none.
+	 * Several searches may share one database.
+	 * @param tablebase
+	 */
+	public void setTablebase(Tablebase tablebase){
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * @return the endgame database positions are looked up in
+	 */
+	public Tablebase getTablebase(){
+		return tablebase;
+	}
+
+	/**
+	 * Make this search one of the helpers searching alongside a main search
+	 * on the same table. Each helper skips some depths in its own pattern,
+	 * odd helpers starting one depth ahead, so the helpers fill the table
+	 * with different parts of the tree. 0 makes it a main search that visits
+	 * every depth.
+	 * @param helper
+	 */
+	public void setHelper(int helper){
+		this.helper = helper;
+	}
+
+	/**
+	 * Set the weights positions are scored with. Several searches may share
+	 * one evaluation.
+	 * @param evaluation
+	 */
+	public void setEvaluation(Evaluation evaluation){
+		this.evaluation = evaluation;
+	}
+
+	/**
+	 * @return the weights positions are scored with
+	 */
+	public Evaluation getEvaluation(){
+		return evaluation;
+	}
+
+	/**
+	 * Set the most positions a search may visit, 0 for no limit. Like the time
+	 * budget, the limit only applies once the first ply has been searched.
+	 * @param nodes
+	 */
+	public void setNodeLimit(long nodes){
+		this.nodeLimit = nodes;
+	}
+
+	/**
+	 * @return the most positions a search may visit, 0 for no limit
+	 */
+	public long getNodeLimit(){
+		return nodeLimit;
+	}
+
+	/**
+	 * Ask the running search, and any search started afterwards, to stop as
+	 * soon as possible. It returns the best move of the last completed depth.
+	 * May be called from any thread. Call resume before searching again.
+	 */
+	public void stop(){
+		cancelled = true;
+	}
+
+	/**
+	 * Allow searches to run again after stop was called.
+	 */
+	public void resume(){
+		cancelled = false;
+	}
+
+	/**
+	 * Search the given board to the given depth and return the best move for
+	 * the given player.
+	 * @param board
+	 * @param id the player to move
+	 * @param depth
+	 * @return the best move or Move.NONE if the player can not move
+	 */
+	public long search(Bitboard board, int id, int depth){
+		return search(board, id, depth, 0);
+	}
+
+	/**
+	 * Search the given board one ply deeper at a time until the given depth is
+	 * reached or the time runs out, and return the best move of the last depth
+	 * that was searched completely. The first ply is always completed so a
+	 * move is always found, unless the search is stopped by another thread.
+	 * The board passed in is not changed.
+	 * @param board
+	 * @param id the player to move
+	 * @param maxDepth
+	 * @param millis time budget, 0 for no limit
+	 * @return the best move or Move.NONE if the player can not move
+	 */
+	public long search(Bitboard board, int id, int maxDepth, long millis){
+		nodes = 0;
+		depthReached = 0;
+		probes = 0;
+		hits = 0;
+		expanded = 0;
+		cutoffs = 0;
+		stopped = false;
+		deadline = 0;
+		nodeStop = 0;
+		lineLength = 0;
+		position = new Bitboard(board);
+		//killers belong to the last position, history only fades
+		for (int i = 0; i < MAX_PLY; i++){
+			killers[i][0] = 0;
+			killers[i][1] = 0;
+		}
+		ageHistory();
+		long start = System.nanoTime();
+		maxDepth = Math.max(1, Math.min(maxDepth, MAX_PLY - 1));
+		for (int depth = 1; depth <= maxDepth; depth++){
+			//only start watching the clock once there is a move to fall back on
+			if ((depth == 2) && (millis > 0)){
+				deadline = start + (millis * 1000000L);
+			}
+			if (depth == 2){
+				nodeStop = nodeLimit;
+			}
+			if (skips(depth) && (depth < maxDepth)){
+				continue;
+			}
+			int value = negamax(id, depth, -WIN - 1, WIN + 1, 0);
+			if (stopped){
+				break;
+			}
+			score = value;
+			depthReached = depth;
+			lineLength = pvLength[0];
+			System.arraycopy(pv[0], 0, line, 0, lineLength);
+			//a forced win or loss will not change by looking deeper
+			if (Math.abs(score) >= WIN_BAND){
+				break;
+			}
+		}
+		if (lineLength == 0){
+			return Move.NONE;
+		}
+		return line[0];
+	}
+
+	/**
+	 * @param depth
+	 * @return true if this search is a helper that leaves the given depth to
+	 * the other threads
+	 */
+	private boolean skips(int depth){
+		if (helper == 0){
+			return false;
+		}
+		int i = (helper - 1) % SKIP_SIZE.length;
+		return (((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) % 2) != 0;
+	}
+
+	/**
+	 * Search the current position with the negamax formulation of minimax.
+	 * The returned score is always from the point of view of the player to move.
+	 * @param id
+	 * @param depth remaining plies to search
+	 * @param alpha
+	 * @param beta
+	 * @param ply distance from the root
+	 * @return
+	 */
+	private int negamax(int id, int depth, int alpha, int beta, int ply){
+		nodes++;
+		pvLength[ply] = 0;
+		if ((nodes % CHECK_INTERVAL) == 0){
+			if (cancelled || ((deadline != 0) && (System.nanoTime() >= deadline))
+					|| ((nodeStop != 0) && (nodes >= nodeStop))){
+				stopped = true;
+			}
+		}
+		if (stopped){
+			return 0;
+		}
+		if (position.pieces(id) == 0){
+			return -WIN + ply;
+		}
+		//the root still needs a move, so only positions after it are looked up
+		if ((tablebase != null) && (ply > 0)){
+			int result = tablebase.probe(position, id);
+			if (result != Tablebase.UNKNOWN){
+				if (result > 0){
+					return WIN - ply - result;
+				}
+				else if (result < 0){
+					return -WIN + ply - result - 1;
+				}
+				return 0;
+			}
+		}
+		if (depth == 0){
+			return evaluate(position, id);
+		}
+		long key = position.getKey() ^ ((id == 2) ? Bitboard.SIDE : 0);
+		int hashMove = 0;//id of the move to search first
+		if (table != null){
+			long entry = table.probe(key);
+			probes++;
+			if (entry != TranspositionTable.NONE){
+				hits++;
+				hashMove = TranspositionTable.move(entry);
+				if ((ply > 0) && (TranspositionTable.depth(entry) >= depth)){
+					int value = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if ((bound == TranspositionTable.EXACT)
+							|| ((bound == TranspositionTable.LOWER) && (value >= beta))
+							|| ((bound == TranspositionTable.UPPER) && (value <= alpha))){
+						return value;
+					}
+				}
+			}
+		}
+		long[] list = moves[ply];
+		int count = position.generate(id, list, 0);
+		//a player who can not move has lost
+		if (count == 0){
+			return -WIN + ply;
+		}
+		//try the best move of the previous iteration first
+		if ((ply == 0) && (lineLength > 0)){
+			hashMove = Move.id(line[0]);
+		}
+		expanded++;
+		int[] order = scores[ply];
+		for (int i = 0; i < count; i++){
+			order[i] = order(list[i], hashMove, ply);
+		}
+		int alphaStart = alpha;
+		int best = -WIN - 1;
+		long bestMove = Move.NONE;
+		for (int i = 0; i < count; i++){
+			//bring the best scored move left to the front, stopping early on a cutoff
+			int pick = i;
+			for (int k = i + 1; k < count; k++){
+				if (order[k] > order[pick]){
+					pick = k;
+				}
+			}
+			long move = list[pick];
+			list[pick] = list[i];
+			list[i] = move;
+			int swap = order[pick];
+			order[pick] = order[i];
+			order[i] = swap;
+			position.makeMove(move);
+			int value = -negamax(3 - id, depth - 1, -beta, -alpha, ply + 1);
+			position.unmakeMove(move);
+			if (stopped){
+				return 0;
+			}
+			if (value > best){
+				best = value;
+				bestMove = move;
+				if (value > alpha){
+					alpha = value;
+					//this move is the new best line so copy its line up
+					pv[ply][0] = move;
+					System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+					pvLength[ply] = pvLength[ply + 1] + 1;
+				}
+				if (alpha >= beta){
+					cutoffs++;
+					if (!Move.isCapture(move)){
+						cutoff(move, depth, ply);
+					}
+					break;
+				}
+			}
+		}
+		if (table != null){
+			int bound = TranspositionTable.EXACT;
+			if (best <= alphaStart){
+				bound = TranspositionTable.UPPER;
+			}
+			else if (best >= beta){
+				bound = TranspositionTable.LOWER;
+			}
+			table.store(key, depth, toTable(best, ply), bound, Move.id(bestMove));
+		}
+		return best;
+	}
+
+	/**
+	 * Score a move for ordering. Capturing, especially kings, and kinging come
+	 * first, then the killers of this ply, and moves that leave the moved piece
+	 * open to a jump come last. Moves scored the same are ordered by history.
+	 * @param move
+	 * @param hashMove id of the best move stored in the table
+	 * @param ply
+	 * @return higher scores are searched first
+	 */
+	private int order(long move, int hashMove, int ply){
+		int id = Move.id(move);
+		if (id == hashMove){
+			return ORDER_HASH;
+		}
+		int value = 0;
+		if ((id == killers[ply][0]) || (id == killers[ply][1])){
+			value += ORDER_KILLER;
+		}
+		int captured = Move.captured(move);
+		if (captured != 0){
+			value += (ORDER_CAPTURE * Integer.bitCount(captured))
+					+ (ORDER_KING_CAPTURE * Integer.bitCount(Move.capturedKings(move)));
+		}
+		if (Move.isPromotion(move)){
+			value += ORDER_PROMOTION;
+		}
+		position.makeMove(move);
+		if (position.threatened(Move.to(move))){
+			value -= ORDER_DANGER;
+		}
+		position.unmakeMove(move);
+		return (value * HISTORY_LIMIT) + history[Move.from(move)][Move.to(move)];
+	}
+
+	/**
+	 * Remember a quiet move that caused a cutoff, as a killer of its ply and
+	 * in the history. Deeper cutoffs count for more.
+	 * @param move
+	 * @param depth remaining plies when the cutoff happened
+	 * @param ply
+	 */
+	private void cutoff(long move, int depth, int ply){
+		int id = Move.id(move);
+		if (killers[ply][0] != id){
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = id;
+		}
+		int from = Move.from(move);
+		int to = Move.to(move);
+		history[from][to] += depth * depth;
+		if (history[from][to] >= HISTORY_LIMIT){
+			ageHistory();
+		}
+	}
+
+	/**
+	 * Halve every history score, so older cutoffs count for less.
+	 */
+	private void ageHistory(){
+		for (int from = 0; from < 32; from++){
+			for (int to = 0; to < 32; to++){
+				history[from][to] >>= 1;
+			}
+		}
+	}
+
+	/**
+	 * Convert a score to be stored in the table. Wins are stored as the
+	 * distance from this position rather than from the root.
+	 * @param score
+	 * @param ply
+	 * @return
+	 */
+	private static int toTable(int score, int ply){
+		if (score >= WIN_BAND){
+			return score + ply;
+		}
+		else if (score <= -WIN_BAND){
+			return score - ply;
+		}
+		return score;
+	}
+
+	/**
+	 * Convert a score read from the table back into a distance from the root.
+	 * @param score
+	 * @param ply
+	 * @return
+	 */
+	private static int fromTable(int score, int ply){
+		if (score >= WIN_BAND){
+			return score - ply;
+		}
+		else if (score <= -WIN_BAND){
+			return score + ply;
+		}
+		return score;
+	}
+
+	/**
+	 * Score a board from the point of view of the given player with the
+	 * weights of this search's evaluation.
+	 * @param board
+	 * @param id
+	 * @return
+	 */
+	public int evaluate(Bitboard board, int id){
+		return evaluation.evaluate(board, id);
+	}
+
+	/**
+	 * @return the best line of moves found by the last search
+	 */
+	public long[] getLine(){
+		long[] copy = new long[lineLength];
+		System.arraycopy(line, 0, copy, 0, lineLength);
+		return copy;
+	}
+
+	/**
+	 * @return the deepest iteration the last search completed
+	 */
+	public int getDepthReached(){
+		return depthReached;
+	}
+
+	/**
+	 * @return the number of positions visited by the last search
+	 */
+	public long getNodes(){
+		return nodes;
+	}
+
+	/**
+	 * @return the effective branching factor of the last search, the number
+	 * of moves per position that would visit as many positions in a full tree
+	 * as deep as the deepest completed iteration, 0 if none completed
+	 */
+	public double getBranchingFactor(){
+		return (depthReached == 0) ? 0 : Math.pow(nodes, 1.0 / depthReached);
+	}
+
+	/**
+	 * @return the number of transposition table lookups made by the last search
+	 */
+	public long getProbes(){
+		return probes;
+	}
+
+	/**
+	 * @return the number of lookups of the last search that found their position
+	 */
+	public long getHits(){
+		return hits;
+	}
+
+	/**
+	 * @return the number of positions whose moves the last search looked at
+	 */
+	public long getExpanded(){
+		return expanded;
+	}
+
+	/**
+	 * @return the number of those positions where a move caused a cutoff
+	 */
+	public long getCutoffs(){
+		return cutoffs;
+	}
+
+	/**
+	 * @return the score of the last search for the player who was to move
+	 */
+	public int getScore(){
+		return score;
+	}
+
+}
@@ -0,0 +1,241 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps statistics of every move an AI searches: positions
+ * visited, positions per second, depth reached, effective branching factor,
+ * transposition table hit rate, cutoff rate, time and bytes allocated. Move
+ * times are also counted in a histogram of roughly doubling buckets, so
+ * percentiles can be read across a whole session. The statistics can be
+ * watched over JMX once register is called.
+ * Rates come from the main search thread, as do bytes allocated, so helper
+ * threads only add to the positions visited.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class SearchStats implements SearchStatsMBean {
+
+	/* upper bound in milliseconds of each latency bucket but the last */
+	private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+	private long moves;//moves recorded
+	private long totalNodes;
+	private long totalNanos;
+	private long totalDepth;
+	private long[] histogram;//moves in each latency bucket, the last for slower moves
+
+	private long lastNodes;
+	private long lastNanos;
+	private int lastDepth;
+	private double lastBranchingFactor;
+	private double lastHitRate;
+	private double lastCutoffRate;
+	private long lastAllocatedBytes;
+
+	/**
+	 * Construct a new set of statistics with no moves recorded.
+	 */
+	public SearchStats(){
+		this.histogram = new long[BUCKETS.length + 1];
+	}
+
+	/**
+	 * Make these statistics visible over JMX under Checkers:type=SearchStats
+	 * with the given name.
+	 * @param name
+	 * @throws JMException if the name is taken or not allowed
+	 */
+	public void register(String name) throws JMException{
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName("Checkers:type=SearchStats,name=" + name));
+	}
+
+	/**
+	 * Record a move.
+	 * @param nanos time taken to choose the move
+	 * @param nodes positions visited by every thread
+	 * @param bytes bytes allocated by the thread that chose the move
+	 * @param search the main search, null if the move was found without searching
+	 * @return the move as one line for the log, made before another move can
+	 * be recorded
+	 */
+	public synchronized String record(long nanos, long nodes, long bytes, Search search){
+		moves++;
+		totalNodes += nodes;
+		totalNanos += nanos;
+		lastNodes = nodes;
+		lastNanos = nanos;
+		lastAllocatedBytes = bytes;
+		lastDepth = 0;
+		lastBranchingFactor = 0;
+		lastHitRate = 0;
+		lastCutoffRate = 0;
+		if (search != null){
+			lastDepth = search.getDepthReached();
+			lastBranchingFactor = search.getBranchingFactor();
+			lastHitRate = (search.getProbes() == 0) ? 0 : (double) search.getHits() / search.getProbes();
+			lastCutoffRate = (search.getExpanded() == 0) ? 0 : (double) search.getCutoffs() / search.getExpanded();
+		}
+		totalDepth += lastDepth;
+		long millis = nanos / 1000000L;
+		int bucket = 0;
+		while ((bucket < BUCKETS.length) && (millis > BUCKETS[bucket])){
+			bucket++;
+		}
+		histogram[bucket]++;
+		return lastLine();
+	}
+
+	/**
+	 * @return the last move recorded as one line, for the log. When several
+	 * threads share these statistics use the line returned by record instead.
+	 */
+	public synchronized String lastLine(){
+		return String.format("nodes %d, %.0f nodes/s, depth %d, branching %.2f, tt hits %.1f%%, cutoffs %.1f%%, %.1f ms, %d bytes",
+				lastNodes, getLastNodesPerSecond(), lastDepth, lastBranchingFactor, lastHitRate * 100,
+				lastCutoffRate * 100, getLastMillis(), lastAllocatedBytes);
+	}
+
+	/**
+	 * @return a bytes allocated counter for the calling thread, -1 if the JVM
+	 * does not keep one
+	 */
+	public static long allocatedBytes(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	@Override
+	public synchronized long getMoves(){
+		return moves;
+	}
+
+	@Override
+	public synchronized long getTotalNodes(){
+		return totalNodes;
+	}
+
+	@Override
+	public synchronized double getAverageNodesPerSecond(){
+		return (totalNanos == 0) ? 0 : totalNodes * 1e9 / totalNanos;
+	}
+
+	@Override
+	public synchronized double getAverageDepth(){
+		return (moves == 0) ? 0 : (double) totalDepth / moves;
+	}
+
+	@Override
+	public synchronized double getAverageMillis(){
+		return (moves == 0) ? 0 : totalNanos / 1e6 / moves;
+	}
+
+	@Override
+	public synchronized long getLastNodes(){
+		return lastNodes;
+	}
+
+	@Override
+	public synchronized double getLastNodesPerSecond(){
+		return (lastNanos == 0) ? 0 : lastNodes * 1e9 / lastNanos;
+	}
+
+	@Override
+	public synchronized int getLastDepth(){
+		return lastDepth;
+	}
+
+	@Override
+	public synchronized double getLastBranchingFactor(){
+		return lastBranchingFactor;
+	}
+
+	@Override
+	public synchronized double getLastHitRate(){
+		return lastHitRate;
+	}
+
+	@Override
+	public synchronized double getLastCutoffRate(){
+		return lastCutoffRate;
+	}
+
+	@Override
+	public synchronized double getLastMillis(){
+		return lastNanos / 1e6;
+	}
+
+	@Override
+	public synchronized long getLastAllocatedBytes(){
+		return lastAllocatedBytes;
+	}
+
+	@Override
+	public long[] getLatencyBuckets(){
+		return BUCKETS.clone();
+	}
+
+	@Override
+	public synchronized long[] getLatencyHistogram(){
+		return histogram.clone();
+	}
+
+	@Override
+	public long getLatencyMedianMillis(){
+		return percentile(0.5);
+	}
+
+	@Override
+	public long getLatency90Millis(){
+		return percentile(0.9);
+	}
+
+	@Override
+	public long getLatency99Millis(){
+		return percentile(0.99);
+	}
+
+	/**
+	 * @param fraction
+	 * @return the bound of the bucket holding the given fraction of moves,
+	 * Long.MAX_VALUE if it is the last bucket and 0 if there are no moves
+	 */
+	public synchronized long percentile(double fraction){
+		if (moves == 0){
+			return 0;
+		}
+		long target = (long) Math.ceil(fraction * moves);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS.length; i++){
+			seen += histogram[i];
+			if (seen >= target){
+				return BUCKETS[i];
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public synchronized void reset(){
+		moves = 0;
+		totalNodes = 0;
+		totalNanos = 0;
+		totalDepth = 0;
+		for (int i = 0; i < histogram.length; i++){
+			histogram[i] = 0;
+		}
+		lastNodes = 0;
+		lastNanos = 0;
+		lastDepth = 0;
+		lastBranchingFactor = 0;
+		lastHitRate = 0;
+		lastCutoffRate = 0;
+		lastAllocatedBytes = 0;
+	}
+
+}
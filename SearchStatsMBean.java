@@ -0,0 +1,58 @@
+/**
+ * The statistics of the moves an AI has searched, as shown over JMX, for
+ * example in jconsole. Values named last are for the most recent move, the
+ * others cover every move since the statistics were reset.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public interface SearchStatsMBean {
+
+	public long getMoves();
+	
+	public long getTotalNodes();
+	
+	public double getAverageNodesPerSecond();
+	
+	public double getAverageDepth();
+	
+	public double getAverageMillis();
+	
+	public long getLastNodes();
+	
+	public double getLastNodesPerSecond();
+	
+	public int getLastDepth();
+	
+	public double getLastBranchingFactor();
+	
+	public double getLastHitRate();
+	
+	public double getLastCutoffRate();
+	
+	public double getLastMillis();
+	
+	public long getLastAllocatedBytes();
+	
+	/**
+	 * @return the upper bound in milliseconds of each latency bucket, the
+	 * last bucket holds every slower move
+	 */
+	public long[] getLatencyBuckets();
+	
+	/**
+	 * @return the number of moves that took up to each bucket's bound
+	 */
+	public long[] getLatencyHistogram();
+	
+	public long getLatencyMedianMillis();
+	
+	public long getLatency90Millis();
+	
+	public long getLatency99Millis();
+	
+	/**
+	 * Forget every move recorded so far.
+	 */
+	public void reset();
+	
+}
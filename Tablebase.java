@@ -0,0 +1,268 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class looks up the result of endgame positions in a database built by
+ * TablebaseGenerator. The database file is mapped into memory rather than
+ * read, so opening it takes no time, it uses no heap and the operating system
+ * only loads the parts that are looked at. Every lookup is a single read.
+ * Positions are stored with player 1 to move. A position with player 2 to
+ * move is turned around first, since turning the board half a turn and
+ * swapping the colors gives the same game, which moves square sq to square
+ * 31 - sq and so is just reversing the bits of each mask.
+ * The positions are split into slices by how many men and kings each player
+ * has. Inside a slice each position has an index worked out from the squares
+ * of each group of pieces, so the file holds one value per position and no
+ * keys.
+ * File layout: magic, version, most pieces, number of slices (ints), then for
+ * each slice the men and kings of each player (bytes), the byte offset of its
+ * values (long) and its number of positions (int), then the values as shorts.
+ * A value greater than 0 is a win for the player to move in that many plies,
+ * a value less than 0 is a loss in -value - 1 plies and 0 is a draw.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Tablebase {
+
+	/* file the AI looks for when it starts */
+	public static final String DEFAULT_FILE = "tablebase.bin";
+
+	/* first int of every database file */
+	public static final int MAGIC = 0x434B5442;
+
+	/* version of the file layout */
+	public static final int VERSION = 1;
+
+	/* most pieces a database can be built for, each count must fit in 4 bits */
+	public static final int MAX_PIECES = 12;
+
+	/* longest win or loss in plies a value can hold, since values are stored as shorts */
+	public static final int MAX_DISTANCE = Short.MAX_VALUE;
+
+	/* returned by probe for a position the database does not hold */
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+
+	/* bytes used by the start of the file and by each slice's entry after it */
+	static final int HEADER_SIZE = 16;
+	static final int SLICE_SIZE = 16;
+
+	/* squares men can stand on, since men are kinged on the far row */
+	private static final int MAN_SQUARES = 28;
+
+	/* binomial coefficients, CHOOSE[n][k] ways to pick k of n squares */
+	private static final long[][] CHOOSE = new long[33][33];
+
+	static{
+		for (int n = 0; n <= 32; n++){
+			CHOOSE[n][0] = 1;
+			for (int k = 1; k <= n; k++){
+				CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+			}
+		}
+	}
+
+	private MappedByteBuffer buffer;
+	private int pieces;//most pieces of any position in the database
+	private long[] offsets;//byte offset of each slice's values, -1 if it is not stored
+
+	/**
+	 * Open a database file built by TablebaseGenerator.
+	 * @param path
+	 * @throws IOException if the file can not be read or is not a database
+	 */
+	public Tablebase(String path) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+		try{
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE){
+				throw new IOException(path + " is too large to map");
+			}
+			//the mapping stays valid after the file is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally{
+			file.close();
+		}
+		if ((buffer.capacity() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC)){
+			throw new IOException(path + " is not a tablebase");
+		}
+		if (buffer.getInt(4) != VERSION){
+			throw new IOException(path + " was built by a different version");
+		}
+		pieces = buffer.getInt(8);
+		int count = buffer.getInt(12);
+		offsets = new long[1 << 16];
+		for (int i = 0; i < offsets.length; i++){
+			offsets[i] = -1;
+		}
+		for (int i = 0; i < count; i++){
+			int at = HEADER_SIZE + (i * SLICE_SIZE);
+			int slice = slice(buffer.get(at), buffer.get(at + 1), buffer.get(at + 2), buffer.get(at + 3));
+			offsets[slice] = buffer.getLong(at + 4);
+		}
+	}
+
+	/**
+	 * @return the most pieces of any position in the database
+	 */
+	public int getPieces(){
+		return pieces;
+	}
+
+	/**
+	 * Look up a position.
+	 * @param board
+	 * @param id the player to move
+	 * @return the value of the position for the player to move, or UNKNOWN if
+	 * it has too many pieces
+	 */
+	public int probe(Bitboard board, int id){
+		int men = board.men(id);
+		int kings = board.kings(id);
+		int otherMen = board.men(3 - id);
+		int otherKings = board.kings(3 - id);
+		if (id == 2){
+			men = Integer.reverse(men);
+			kings = Integer.reverse(kings);
+			otherMen = Integer.reverse(otherMen);
+			otherKings = Integer.reverse(otherKings);
+		}
+		int a = Integer.bitCount(men);
+		int b = Integer.bitCount(kings);
+		int c = Integer.bitCount(otherMen);
+		int d = Integer.bitCount(otherKings);
+		if ((a + b + c + d) > pieces){
+			return UNKNOWN;
+		}
+		long offset = offsets[slice(a, b, c, d)];
+		if (offset < 0){
+			return UNKNOWN;
+		}
+		return buffer.getShort((int) (offset + (2 * index(men, kings, otherMen, otherKings))));
+	}
+
+	/**
+	 * @param a men of the player to move
+	 * @param b kings of the player to move
+	 * @param c men of the other player
+	 * @param d kings of the other player
+	 * @return the number identifying the slice holding positions with these pieces
+	 */
+	static int slice(int a, int b, int c, int d){
+		return a | (b << 4) | (c << 8) | (d << 12);
+	}
+
+	/**
+	 * @param a men of the player to move
+	 * @param b kings of the player to move
+	 * @param c men of the other player
+	 * @param d kings of the other player
+	 * @return the number of positions in the slice
+	 */
+	static long size(int a, int b, int c, int d){
+		return CHOOSE[MAN_SQUARES][a] * CHOOSE[MAN_SQUARES][c]
+				* CHOOSE[32 - a - c][b] * CHOOSE[32 - a - c - b][d];
+	}
+
+	/**
+	 * Work out the index of a position inside its slice, with player 1 to move.
+	 * The men of each player are numbered among the 28 squares they can stand
+	 * on, then the kings of each player among the squares still empty.
+	 * @param men men of player 1, never on row 0
+	 * @param kings kings of player 1
+	 * @param otherMen men of player 2, never on row 7
+	 * @param otherKings kings of player 2
+	 * @return
+	 */
+	static long index(int men, int kings, int otherMen, int otherKings){
+		int a = Integer.bitCount(men);
+		int b = Integer.bitCount(kings);
+		int c = Integer.bitCount(otherMen);
+		int d = Integer.bitCount(otherKings);
+		int empty = ~(men | otherMen);
+		long index = rank(men >>> 4, Bitboard.ALL);
+		index = (index * CHOOSE[MAN_SQUARES][c]) + rank(otherMen, Bitboard.ALL);
+		index = (index * CHOOSE[32 - a - c][b]) + rank(kings, empty);
+		index = (index * CHOOSE[32 - a - c - b][d]) + rank(otherKings, empty & ~kings);
+		return index;
+	}
+
+	/**
+	 * Fill in the masks of the position with the given index, the reverse of index.
+	 * @param a men of the player to move
+	 * @param b kings of the player to move
+	 * @param c men of the other player
+	 * @param d kings of the other player
+	 * @param index
+	 * @param masks receives the men and kings of player 1 then of player 2
+	 * @return false if no position has this index, because men of both
+	 * players would be on the same square
+	 */
+	static boolean decode(int a, int b, int c, int d, long index, int[] masks){
+		long otherKingCount = CHOOSE[32 - a - c - b][d];
+		long kingCount = CHOOSE[32 - a - c][b];
+		long otherMenCount = CHOOSE[MAN_SQUARES][c];
+		long otherKings = index % otherKingCount;
+		index /= otherKingCount;
+		long kings = index % kingCount;
+		index /= kingCount;
+		long otherMen = index % otherMenCount;
+		index /= otherMenCount;
+		masks[0] = unrank(index, a, Bitboard.ALL) << 4;
+		masks[2] = unrank(otherMen, c, Bitboard.ALL);
+		if ((masks[0] & masks[2]) != 0){
+			return false;
+		}
+		int empty = ~(masks[0] | masks[2]);
+		masks[1] = unrank(kings, b, empty);
+		masks[3] = unrank(otherKings, d, empty & ~masks[1]);
+		return true;
+	}
+
+	/**
+	 * Number a set of squares among all the sets of the same size, counting
+	 * only the squares inside the given mask.
+	 * @param squares
+	 * @param within
+	 * @return
+	 */
+	private static long rank(int squares, int within){
+		long rank = 0;
+		int k = 1;
+		for (int rest = squares; rest != 0; rest &= rest - 1){
+			int below = (rest & -rest) - 1;
+			rank += CHOOSE[Integer.bitCount(within & below)][k++];
+		}
+		return rank;
+	}
+
+	/**
+	 * Find the set of squares with the given number, the reverse of rank.
+	 * @param rank
+	 * @param k number of squares in the set
+	 * @param within
+	 * @return
+	 */
+	private static int unrank(long rank, int k, int within){
+		int squares = 0;
+		int position = Integer.bitCount(within);
+		for (; k > 0; k--){
+			position--;
+			while (CHOOSE[position][k] > rank){
+				position--;
+			}
+			rank -= CHOOSE[position][k];
+			//find the square that is at this position among the squares within
+			int rest = within;
+			for (int i = 0; i < position; i++){
+				rest &= rest - 1;
+			}
+			squares |= rest & -rest;
+		}
+		return squares;
+	}
+
+}
@@ -0,0 +1,258 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * This class builds the endgame database read by Tablebase, holding the
+ * result of every position with up to a given number of pieces and how many
+ * plies it takes to win or lose it.
+ * Slices are solved from the fewest pieces up, and from the fewest men up
+ * among slices with the same number of pieces, since a capture always leads
+ * to a slice with fewer pieces and kinging to one with fewer men. Moves that
+ * do neither stay among the slices with the same pieces and men, so those are
+ * solved together. They are swept again and again: a position with no moves
+ * is lost, then on the sweep for n plies a position wins if a move leads to a
+ * loss in n - 1 plies and loses if every move leads to a win taking at most
+ * n - 1 plies. When a sweep changes nothing and no longer result can follow,
+ * the positions left are draws.
+ * Run with: java TablebaseGenerator [pieces] [file]
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class TablebaseGenerator {
+
+	/* number of pieces built when none is given */
+	public static final int DEFAULT_PIECES = 4;
+
+	private int pieces;
+	private short[][] values;//values of every slice built so far, by slice number
+	private ArrayList<int[]> slices;//men and kings of every slice built so far, in order
+	private int longest;//most plies to the end of a game found so far
+	private long[] moves;//buffer for generated moves
+
+	/**
+	 * Construct a new generator for positions with up to the given number of pieces.
+	 * @param pieces
+	 */
+	public TablebaseGenerator(int pieces){
+		if ((pieces < 2) || (pieces > Tablebase.MAX_PIECES)){
+			throw new IllegalArgumentException("pieces must be between 2 and " + Tablebase.MAX_PIECES);
+		}
+		this.pieces = pieces;
+		this.values = new short[1 << 16][];
+		this.slices = new ArrayList<int[]>();
+		this.longest = 0;
+		this.moves = new long[Bitboard.MAX_MOVES];
+	}
+
+	/**
+	 * Solve every slice, printing a line for each group solved together.
+	 */
+	public void build(){
+		for (int total = 2; total <= pieces; total++){
+			for (int men = 0; men <= total; men++){
+				ArrayList<int[]> group = new ArrayList<int[]>();
+				for (int a = 0; a <= men; a++){
+					for (int b = 0; b <= total - men; b++){
+						int c = men - a;
+						int d = total - men - b;
+						//a player with no pieces has already lost
+						if ((a + b > 0) && (c + d > 0)){
+							group.add(new int[] {a, b, c, d});
+						}
+					}
+				}
+				long start = System.nanoTime();
+				int sweeps = solve(group);
+				long[] results = new long[3];
+				long positions = 0;
+				for (int i = 0; i < group.size(); i++){
+					int[] s = group.get(i);
+					short[] slice = values[Tablebase.slice(s[0], s[1], s[2], s[3])];
+					positions += slice.length;
+					for (int k = 0; k < slice.length; k++){
+						results[Integer.signum(slice[k]) + 1]++;
+					}
+				}
+				System.out.println(String.format("%d pieces, %d men: %d slices, %d positions, %d sweeps, "
+						+ "%d wins, %d losses, %d draws or unused, %.2fs",
+						total, men, group.size(), positions, sweeps, results[2], results[0], results[1],
+						(System.nanoTime() - start) / 1e9));
+			}
+		}
+	}
+
+	/**
+	 * Solve a group of slices that moves without captures or kinging stay in.
+	 * @param group
+	 * @return the number of sweeps made
+	 */
+	private int solve(ArrayList<int[]> group){
+		for (int i = 0; i < group.size(); i++){
+			int[] s = group.get(i);
+			long size = Tablebase.size(s[0], s[1], s[2], s[3]);
+			if (size > Integer.MAX_VALUE){
+				throw new IllegalStateException("slice " + s[0] + s[1] + s[2] + s[3] + " is too large");
+			}
+			values[Tablebase.slice(s[0], s[1], s[2], s[3])] = new short[(int) size];
+			slices.add(s);
+		}
+		//positions still to solve in each slice, every valid position to start with
+		int[][] open = new int[group.size()][];
+		int[] left = new int[group.size()];
+		int[] masks = new int[4];
+		for (int i = 0; i < group.size(); i++){
+			int[] s = group.get(i);
+			open[i] = new int[values[Tablebase.slice(s[0], s[1], s[2], s[3])].length];
+			for (int index = 0; index < open[i].length; index++){
+				if (Tablebase.decode(s[0], s[1], s[2], s[3], index, masks)){
+					open[i][left[i]++] = index;
+				}
+			}
+		}
+		int sweep = 0;
+		while (true){
+			boolean changed = false;
+			for (int i = 0; i < group.size(); i++){
+				int[] s = group.get(i);
+				short[] slice = values[Tablebase.slice(s[0], s[1], s[2], s[3])];
+				int kept = 0;
+				for (int k = 0; k < left[i]; k++){
+					int index = open[i][k];
+					Tablebase.decode(s[0], s[1], s[2], s[3], index, masks);
+					int value = value(board(masks), sweep);
+					if (value != 0){
+						slice[index] = (short) value;
+						changed = true;
+					}
+					else{
+						open[i][kept++] = index;
+					}
+				}
+				left[i] = kept;
+			}
+			if (changed){
+				longest = Math.max(longest, sweep);
+			}
+			else if (sweep > longest + 1){
+				return sweep;
+			}
+			sweep++;
+		}
+	}
+
+	/**
+	 * Work out the value of a position with player 1 to move on the given sweep.
+	 * @param board
+	 * @param sweep number of plies results are found for on this sweep
+	 * @return the value, or 0 if it is not known yet
+	 */
+	private int value(Bitboard board, int sweep){
+		int count = board.generate(1, moves, 0);
+		if (count == 0){
+			return (sweep == 0) ? -1 : 0;
+		}
+		boolean allWin = true;//if every move leads to a win for the other player
+		int slowest = 0;//most plies the other player takes to win
+		for (int i = 0; i < count; i++){
+			board.makeMove(moves[i]);
+			int reply = (board.pieces(2) == 0) ? -1 : lookup(board);
+			board.unmakeMove(moves[i]);
+			if ((reply < 0) && (-reply - 1 == sweep - 1)){
+				return sweep;
+			}
+			if (reply <= 0){
+				allWin = false;
+			}
+			slowest = Math.max(slowest, reply);
+		}
+		if (allWin && (slowest == sweep - 1)){
+			return -sweep - 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Look up a position with player 2 to move in the slices built so far.
+	 * @param board
+	 * @return
+	 */
+	private int lookup(Bitboard board){
+		int men = Integer.reverse(board.men(2));
+		int kings = Integer.reverse(board.kings(2));
+		int otherMen = Integer.reverse(board.men(1));
+		int otherKings = Integer.reverse(board.kings(1));
+		short[] slice = values[Tablebase.slice(Integer.bitCount(men), Integer.bitCount(kings),
+				Integer.bitCount(otherMen), Integer.bitCount(otherKings))];
+		return slice[(int) Tablebase.index(men, kings, otherMen, otherKings)];
+	}
+
+	/**
+	 * @param masks men and kings of player 1 then of player 2
+	 * @return a board holding the given pieces
+	 */
+	private static Bitboard board(int[] masks){
+		Bitboard board = new Bitboard();
+		for (int k = 0; k < 4; k++){
+			for (int rest = masks[k]; rest != 0; rest &= rest - 1){
+				board.set(Integer.numberOfTrailingZeros(rest), (k < 2) ? 1 : 2, (k % 2) == 1);
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Write every slice to a database file.
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(String path) throws IOException{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		try{
+			out.writeInt(Tablebase.MAGIC);
+			out.writeInt(Tablebase.VERSION);
+			out.writeInt(pieces);
+			out.writeInt(slices.size());
+			long offset = Tablebase.HEADER_SIZE + ((long) slices.size() * Tablebase.SLICE_SIZE);
+			for (int i = 0; i < slices.size(); i++){
+				int[] s = slices.get(i);
+				short[] slice = values[Tablebase.slice(s[0], s[1], s[2], s[3])];
+				for (int k = 0; k < 4; k++){
+					out.writeByte(s[k]);
+				}
+				out.writeLong(offset);
+				out.writeInt(slice.length);
+				offset += 2L * slice.length;
+			}
+			for (int i = 0; i < slices.size(); i++){
+				int[] s = slices.get(i);
+				short[] slice = values[Tablebase.slice(s[0], s[1], s[2], s[3])];
+				for (int k = 0; k < slice.length; k++){
+					out.writeShort(slice[k]);
+				}
+			}
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * Build a database from the command line.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException{
+		int pieces = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PIECES;
+		String path = (args.length > 1) ? args[1] : Tablebase.DEFAULT_FILE;
+		long start = System.nanoTime();
+		TablebaseGenerator generator = new TablebaseGenerator(pieces);
+		generator.build();
+		generator.write(path);
+		System.out.println(String.format("wrote %s in %.2fs, longest game %d plies",
+				path, (System.nanoTime() - start) / 1e9, generator.longest));
+	}
+
+}
@@ -0,0 +1,494 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class plays games between two AI settings without the GUI, running
+ * many games at once on a pool of threads, each with its own GameModel and
+ * AIs. Games are played in pairs from the same random opening with the
+ * players swapping colors, so neither setting gains from a lucky opening.
+ * A game that reaches the ply limit is a draw. A line is written to a CSV
+ * file as each game ends, and at the end the score of the first setting is
+ * turned into an Elo difference with a 95% confidence interval, worked out
+ * from the pairs of games.
+ * Settings are written as comma separated name=value pairs, for example
+ * depth=8,time=0,hash=8,book=off,tablebase=off,weights=weights.txt,log=on.
+ * Move times of each setting are summed up at the end.
+ * With -positions every position played in which the player to move has no
+ * jump is also written as FEN followed by the result for player 1 (1, 0.5
+ * or 0), the data Tuner reads.
+ * Run with: java Tournament [-games n] [-threads n] [-plies n] [-opening n]
+ * [-seed n] [-out file] [-positions file] [-a settings] [-b settings]
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Tournament {
+
+	/* columns of the CSV file */
+	public static final String HEADER = "game,red,black,result,winner,plies,nodes_a,nodes_b,ms_per_move_a,ms_per_move_b";
+
+	/**
+	 * The settings of one of the players.
+	 */
+	static class Engine{
+		String name;
+		int depth = 6;
+		long time = 0;
+		int hash = 8;
+		boolean book = true;
+		boolean tablebase = true;
+		String weights;//file the evaluation weights were read from, null for the defaults
+		Evaluation evaluation = new Evaluation();
+		boolean log = false;
+		SearchStats stats = new SearchStats();//shared by every game this setting plays
+		Tablebase database;//opened once and shared by every game, null when off or not built
+		OpeningBook openings;//opened once and shared by every game, null when off or not built
+
+		/**
+		 * Read settings written as comma separated name=value pairs.
+		 * @param name
+		 * @param settings
+		 * @throws IOException if a weights file can not be read
+		 */
+		Engine(String name, String settings) throws IOException{
+			this.name = name;
+			String[] pairs = settings.split(",");
+			for (int i = 0; i < pairs.length; i++){
+				String[] pair = pairs[i].split("=");
+				if (pair.length != 2){
+					continue;
+				}
+				if (pair[0].equals("depth")){
+					depth = Integer.parseInt(pair[1]);
+				}
+				else if (pair[0].equals("time")){
+					time = Long.parseLong(pair[1]);
+				}
+				else if (pair[0].equals("hash")){
+					hash = Integer.parseInt(pair[1]);
+				}
+				else if (pair[0].equals("book")){
+					book = pair[1].equals("on");
+				}
+				else if (pair[0].equals("tablebase")){
+					tablebase = pair[1].equals("on");
+				}
+				else if (pair[0].equals("log")){
+					log = pair[1].equals("on");
+				}
+				else if (pair[0].equals("weights")){
+					weights = pair[1];
+					evaluation = Evaluation.load(weights);
+				}
+				else{
+					throw new IllegalArgumentException("unknown setting " + pair[0]);
+				}
+			}
+			database = tablebase ? AI.openTablebase() : null;
+			openings = book ? AI.openBook() : null;
+		}
+
+		/**
+		 * @param model
+		 * @return an AI with these settings
+		 */
+		AI create(GameModel model){
+			AI ai = new AI(model, depth, database, openings, evaluation);
+			ai.setTimeBudget(time);
+			ai.setHashSize(hash);
+			ai.setStats(stats);
+			ai.setLog(log);
+			return ai;
+		}
+
+		@Override
+		public String toString(){
+			return name + " (depth=" + depth + ",time=" + time + ",hash=" + hash
+					+ ",book=" + (book ? "on" : "off") + ",tablebase=" + (tablebase ? "on" : "off")
+					+ ((weights == null) ? "" : ",weights=" + weights) + ")";
+		}
+	}
+
+	/**
+	 * The outcome of one game.
+	 */
+	static class Result{
+		int game;
+		boolean aIsRed;//if the first setting played player 1
+		int winner;//player who won, 0 for a draw
+		int plies;
+		long[] nodes = new long[2];//positions searched by the first and second setting
+		long[] nanos = new long[2];//time spent thinking by each setting
+		int[] moves = new int[2];//moves made by each setting
+		ArrayList<String> positions;//quiet positions played as FEN, null if not kept
+
+		/**
+		 * @return the score of the first setting, 1 for a win, 0.5 for a draw and 0 for a loss
+		 */
+		double score(){
+			if (winner == 0){
+				return 0.5;
+			}
+			return ((winner == 1) == aIsRed) ? 1 : 0;
+		}
+
+		/**
+		 * @return the result for player 1, as written after each position
+		 */
+		String redResult(){
+			return (winner == 0) ? "0.5" : (winner == 1) ? "1" : "0";
+		}
+
+		/**
+		 * @return the result as a line of the CSV file
+		 */
+		String toLine(){
+			return game + "," + (aIsRed ? "a" : "b") + "," + (aIsRed ? "b" : "a") + "," + score() + ","
+					+ ((winner == 0) ? "draw" : (winner == 1) ? "red" : "black") + "," + plies + ","
+					+ nodes[0] + "," + nodes[1] + ","
+					+ String.format("%.3f,%.3f", millisPerMove(0), millisPerMove(1));
+		}
+
+		/**
+		 * @param engine 0 for the first setting and 1 for the second
+		 * @return the average time the setting took per move
+		 */
+		double millisPerMove(int engine){
+			return (moves[engine] == 0) ? 0 : nanos[engine] / 1e6 / moves[engine];
+		}
+	}
+
+	private Engine a;
+	private Engine b;
+	private int maxPlies;//plies after which a game is a draw
+	private int openingPlies;//random plies played before the AIs take over
+	private long seed;
+	private boolean keepPositions;//if each game keeps its quiet positions
+
+	/**
+	 * Construct a new tournament between two settings.
+	 * @param a
+	 * @param b
+	 * @param maxPlies plies after which a game is a draw
+	 * @param openingPlies random plies played at the start of each pair of games
+	 * @param seed seed of the random openings
+	 */
+	public Tournament(Engine a, Engine b, int maxPlies, int openingPlies, long seed){
+		this.a = a;
+		this.b = b;
+		this.maxPlies = maxPlies;
+		this.openingPlies = openingPlies;
+		this.seed = seed;
+	}
+
+	/**
+	 * Set whether each game keeps the positions it played in which the player
+	 * to move has no jump, to write for Tuner.
+	 * @param keep
+	 */
+	public void setKeepPositions(boolean keep){
+		this.keepPositions = keep;
+	}
+
+	/**
+	 * Play one game. Games 2n and 2n + 1 start from the same opening, with the
+	 * first setting playing red in the even game.
+	 * @param game
+	 * @return
+	 */
+	public Result play(int game){
+		Result result = new Result();
+		result.game = game;
+		result.aIsRed = (game % 2) == 0;
+		GameModel model = new GameModel(false);
+		AI[] engines = new AI[2];
+		engines[0] = a.create(model);
+		engines[1] = b.create(model);
+		//play the same random opening for both games of a pair
+		Random random = new Random(seed + (game / 2));
+		long[] moves = new long[Bitboard.MAX_MOVES];
+		int id = 1;
+		Bitboard board = model.copyBoard(model.getBoard());
+		for (int ply = 0; ply < openingPlies; ply++){
+			int count = board.generate(id, moves, 0);
+			if (count == 0){
+				break;
+			}
+			board.makeMove(moves[random.nextInt(count)]);
+			id = 3 - id;
+		}
+		model.setBoard(board);
+		if (keepPositions){
+			result.positions = new ArrayList<String>(maxPlies);
+		}
+		while (result.plies < maxPlies){
+			if (keepPositions && quiet(model.getBoard(), id, moves)){
+				result.positions.add(Notation.toFEN(model.getBoard(), id));
+			}
+			//the first setting is engine 0 and plays red when aIsRed
+			int engine = ((id == 1) == result.aIsRed) ? 0 : 1;
+			long start = System.nanoTime();
+			long move = engines[engine].bestMove(model.getBoard(), id);
+			result.nanos[engine] += System.nanoTime() - start;
+			result.nodes[engine] += engines[engine].getNodes();
+			result.moves[engine]++;
+			//a player who can not move has lost
+			if (move == Move.NONE){
+				result.winner = 3 - id;
+				return result;
+			}
+			model.play(move);
+			result.plies++;
+			id = 3 - id;
+		}
+		result.winner = 0;
+		return result;
+	}
+
+	/**
+	 * @param board
+	 * @param id the player to move
+	 * @param moves buffer to generate moves into
+	 * @return true if the player to move can not jump, so the evaluation of
+	 * the position is not about to change
+	 */
+	private static boolean quiet(Bitboard board, int id, long[] moves){
+		int count = board.generate(id, moves, 0);
+		for (int i = 0; i < count; i++){
+			if (Move.isCapture(moves[i])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Play the given number of games on the given number of threads, writing
+	 * a line to the CSV file as each one ends and printing a summary.
+	 * @param games
+	 * @param threads
+	 * @param out
+	 * @param positions receives the quiet positions of each game with its
+	 * result, null if they are not kept
+	 * @return the score of the first setting in each game, by game
+	 * @throws InterruptedException
+	 */
+	public double[] run(int games, int threads, PrintWriter out, PrintWriter positions) throws InterruptedException{
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Result> done = new ExecutorCompletionService<Result>(pool);
+		for (int i = 0; i < games; i++){
+			final int game = i;
+			done.submit(new Callable<Result>(){
+				@Override
+				public Result call(){
+					return play(game);
+				}
+			});
+		}
+		double[] scores = new double[games];
+		int[] outcomes = new int[3];//wins, draws and losses of the first setting
+		long start = System.nanoTime();
+		try{
+			out.println(HEADER);
+			for (int i = 0; i < games; i++){
+				Result result = done.take().get();
+				out.println(result.toLine());
+				if ((positions != null) && (result.positions != null)){
+					String red = result.redResult();
+					for (int k = 0; k < result.positions.size(); k++){
+						positions.println(result.positions.get(k) + " " + red);
+					}
+				}
+				scores[result.game] = result.score();
+				outcomes[(int) (2 - (2 * result.score()))]++;
+				if ((((i + 1) % 10) == 0) || (i + 1 == games)){
+					out.flush();
+					double seconds = (System.nanoTime() - start) / 1e9;
+					System.out.println(String.format("%d games, +%d =%d -%d, %.2f games/s",
+							i + 1, outcomes[0], outcomes[1], outcomes[2], (i + 1) / seconds));
+				}
+			}
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException(e.getCause());
+		}
+		finally{
+			pool.shutdownNow();
+		}
+		return scores;
+	}
+
+	/**
+	 * Turn a score into an Elo difference.
+	 * @param score fraction of the points won, between 0 and 1
+	 * @return
+	 */
+	public static double elo(double score){
+		//adding 0 turns the -0 of an even score into 0
+		return (-400 * Math.log10((1 / score) - 1)) + 0.0;
+	}
+
+	/**
+	 * Join the scores of the two games played from each opening, since the
+	 * pair is what varies independently, not the single game. A last game
+	 * without its pair counts on its own.
+	 * @param scores score of the first setting in each game, by game
+	 * @return the mean score of each pair
+	 */
+	public static double[] pairScores(double[] scores){
+		double[] pairs = new double[(scores.length + 1) / 2];
+		for (int i = 0; i < pairs.length; i++){
+			if ((2 * i) + 1 < scores.length){
+				pairs[i] = (scores[2 * i] + scores[(2 * i) + 1]) / 2;
+			}
+			else{
+				pairs[i] = scores[2 * i];
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Work out the Elo difference of the first setting and half the width of
+	 * its 95% confidence interval from the scores of the pairs of games.
+	 * Scores of 0 and 1 are moved just inside the range so the result stays
+	 * finite, use sweepBound to report those.
+	 * @param scores score of the first setting in each game, by game
+	 * @return the difference and the error
+	 */
+	public static double[] eloDifference(double[] scores){
+		double[] pairs = pairScores(scores);
+		double mean = 0;
+		for (int i = 0; i < pairs.length; i++){
+			mean += pairs[i];
+		}
+		mean /= pairs.length;
+		double variance = 0;
+		for (int i = 0; i < pairs.length; i++){
+			variance += (pairs[i] - mean) * (pairs[i] - mean);
+		}
+		variance /= pairs.length;
+		double error = 1.96 * Math.sqrt(variance / pairs.length);
+		double low = elo(clamp(mean - error));
+		double high = elo(clamp(mean + error));
+		return new double[] {elo(clamp(mean)), (high - low) / 2};
+	}
+
+	/**
+	 * @param score
+	 * @return the score moved just inside 0 and 1, where elo is finite
+	 */
+	private static double clamp(double score){
+		return Math.max(1e-9, Math.min(score, 1 - 1e-9));
+	}
+
+	/**
+	 * Work out how large the Elo difference is at least when the first
+	 * setting won every pair of games, from the rule of three: with no losses
+	 * in n pairs the share of points lost is below 3 / n with 95% confidence.
+	 * @param games number of games played
+	 * @return the lowest Elo difference in the 95% confidence interval, 0 if
+	 * too few games were played to say more
+	 */
+	public static double sweepBound(int games){
+		int pairs = (games + 1) / 2;
+		if (pairs <= 6){
+			return 0;
+		}
+		return elo(1 - (3.0 / pairs));
+	}
+
+	/**
+	 * Run a tournament from the command line.
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException{
+		int games = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int plies = 200;
+		int opening = 4;
+		long seed = 1;
+		String path = "tournament.csv";
+		String positionsPath = null;
+		String settingsA = "";
+		String settingsB = "";
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-games")){
+				games = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-threads")){
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-plies")){
+				plies = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-opening")){
+				opening = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-seed")){
+				seed = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-out")){
+				path = args[++i];
+			}
+			else if (args[i].equals("-positions")){
+				positionsPath = args[++i];
+			}
+			else if (args[i].equals("-a")){
+				settingsA = args[++i];
+			}
+			else if (args[i].equals("-b")){
+				settingsB = args[++i];
+			}
+		}
+		Engine a = new Engine("a", settingsA);
+		Engine b = new Engine("b", settingsB);
+		System.out.println(a + " against " + b + ", " + games + " games on " + threads + " threads");
+		Tournament tournament = new Tournament(a, b, plies, opening, seed);
+		tournament.setKeepPositions(positionsPath != null);
+		PrintWriter out = new PrintWriter(new FileWriter(path));
+		PrintWriter positions = (positionsPath == null) ? null : new PrintWriter(new FileWriter(positionsPath));
+		double[] scores;
+		try{
+			scores = tournament.run(games, threads, out, positions);
+		}
+		finally{
+			out.close();
+			if (positions != null){
+				positions.close();
+			}
+		}
+		double total = 0;
+		for (int i = 0; i < scores.length; i++){
+			total += scores[i];
+		}
+		if (total == scores.length){
+			System.out.println(String.format("Elo difference of a: > %+.1f (95%%), every game won", sweepBound(games)));
+		}
+		else if (total == 0){
+			System.out.println(String.format("Elo difference of a: < %+.1f (95%%), every game lost", -sweepBound(games)));
+		}
+		else{
+			double[] elo = eloDifference(scores);
+			System.out.println(String.format("Elo difference of a: %+.1f +- %.1f (95%%)", elo[0], elo[1]));
+		}
+		Engine[] engines = {a, b};
+		for (int i = 0; i < engines.length; i++){
+			SearchStats stats = engines[i].stats;
+			System.out.println(String.format("%s: %d moves, %.0f nodes/s, depth %.1f, move time median <= %d ms, 90%% <= %d ms, 99%% <= %d ms",
+					engines[i].name, stats.getMoves(), stats.getAverageNodesPerSecond(), stats.getAverageDepth(),
+					stats.getLatencyMedianMillis(), stats.getLatency90Millis(), stats.getLatency99Millis()));
+		}
+	}
+
+}
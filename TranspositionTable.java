@@ -0,0 +1,194 @@
+/**
+ * This class remembers the results of positions the search has already
+ * looked at, keyed by their zobrist key. The table is allocated once as two
+ * arrays of longs so storing and probing never creates objects. Each entry
+ * packs the score, depth, bound type, best move and the age of the search
+ * that stored it into a single long.
+ * The table can be shared by several searching threads without locks. The key
+ * is stored xored with the data, so an entry torn by two threads writing at
+ * once no longer matches its key and is treated as missing. The counters are
+ * not synchronized and are only approximate while threads share the table.
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class TranspositionTable {
+
+	/* the stored score is the exact score of the position */
+	public static final int EXACT = 1;
+	/* the stored score is a lower bound, the search failed high */
+	public static final int LOWER = 2;
+	/* the stored score is an upper bound, the search failed low */
+	public static final int UPPER = 3;
+
+	/* returned by probe when the position is not in the table */
+	public static final long NONE = 0;
+
+	/* bytes used by one entry (one key and one data long) */
+	private static final int ENTRY_SIZE = 16;
+
+	/* layout of the data long */
+	private static final int SCORE_BITS = 20;
+	private static final int DEPTH_SHIFT = 20;
+	private static final int BOUND_SHIFT = 28;
+	private static final int AGE_SHIFT = 30;
+	private static final int MOVE_SHIFT = 38;
+	private static final int MOVE_BITS = 24;
+
+	private long[] keys;
+	private long[] data;
+	private int mask;//entries - 1, used to turn a key into an index
+	private int age;//incremented at the start of every search
+
+	private long hits;//probes that found their position
+	private long misses;//probes that found an empty entry
+	private long collisions;//probes that found a different position
+
+	/**
+	 * Construct a new table using about the given number of megabytes.
+	 * The number of entries is rounded down to a power of two.
+	 * @param megabytes
+	 */
+	public TranspositionTable(int megabytes){
+		long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+		int entries = Integer.highestOneBit((int) Math.min(bytes / ENTRY_SIZE, 1 << 30));
+		this.keys = new long[entries];
+		this.data = new long[entries];
+		this.mask = entries - 1;
+		this.age = 0;
+	}
+
+	/**
+	 * Mark the start of a new search so entries from older searches are
+	 * replaced before entries from this one.
+	 */
+	public void newSearch(){
+		age = (age + 1) & 0xFF;
+	}
+
+	/**
+	 * Remove every entry and reset the counters.
+	 */
+	public void clear(){
+		for (int i = 0; i < keys.length; i++){
+			keys[i] = 0;
+			data[i] = 0;
+		}
+		hits = 0;
+		misses = 0;
+		collisions = 0;
+	}
+
+	/**
+	 * Look up a position.
+	 * @param key
+	 * @return the packed entry for the position, or NONE if it is not stored.
+	 * Unpack it with score, depth, bound and move.
+	 */
+	public long probe(long key){
+		int index = (int) key & mask;
+		long entry = data[index];
+		if (entry == NONE){
+			misses++;
+			return NONE;
+		}
+		if ((keys[index] ^ entry) != key){
+			collisions++;
+			return NONE;
+		}
+		hits++;
+		return entry;
+	}
+
+	/**
+	 * Store the result of searching a position. An entry for another position
+	 * is only replaced if it was stored by an older search or searched less deeply.
+	 * @param key
+	 * @param depth
+	 * @param score
+	 * @param bound EXACT, LOWER or UPPER
+	 * @param move best move found, must fit in 24 bits
+	 */
+	public void store(long key, int depth, int score, int bound, int move){
+		int index = (int) key & mask;
+		long old = data[index];
+		if ((old != NONE) && ((keys[index] ^ old) != key) && (age(old) == age) && (depth(old) > depth)){
+			return;
+		}
+		long entry = (score & ((1L << SCORE_BITS) - 1))
+				| ((long) (depth & 0xFF) << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT)
+				| ((long) age << AGE_SHIFT)
+				| ((long) (move & ((1 << MOVE_BITS) - 1)) << MOVE_SHIFT);
+		keys[index] = key ^ entry;
+		data[index] = entry;
+	}
+
+	/**
+	 * @param entry
+	 * @return the score stored in the given entry
+	 */
+	public static int score(long entry){
+		return ((int) entry << (32 - SCORE_BITS)) >> (32 - SCORE_BITS);
+	}
+
+	/**
+	 * @param entry
+	 * @return the depth stored in the given entry
+	 */
+	public static int depth(long entry){
+		return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param entry
+	 * @return the bound type stored in the given entry
+	 */
+	public static int bound(long entry){
+		return (int) (entry >>> BOUND_SHIFT) & 3;
+	}
+
+	/**
+	 * @param entry
+	 * @return the best move stored in the given entry
+	 */
+	public static int move(long entry){
+		return (int) (entry >>> MOVE_SHIFT) & ((1 << MOVE_BITS) - 1);
+	}
+
+	/**
+	 * @param entry
+	 * @return the age of the search that stored the given entry
+	 */
+	private static int age(long entry){
+		return (int) (entry >>> AGE_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @return the number of entries in the table
+	 */
+	public int size(){
+		return keys.length;
+	}
+
+	/**
+	 * @return probes that found their position
+	 */
+	public long getHits(){
+		return hits;
+	}
+
+	/**
+	 * @return probes that found an empty entry
+	 */
+	public long getMisses(){
+		return misses;
+	}
+
+	/**
+	 * @return probes that found an entry holding a different position
+	 */
+	public long getCollisions(){
+		return collisions;
+	}
+
+}
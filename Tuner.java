@@ -0,0 +1,345 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class fits the weights of the Evaluation to the results of played
+ * games, the way the Texel tuning method does. Each line of the data holds a
+ * position as FEN and the result of its game for player 1 (1, 0.5 or 0), as
+ * written by Tournament -positions. The evaluation of each position is turned
+ * into an expected result with a logistic curve, and the weights are moved
+ * to make the mean squared difference from the real results as small as
+ * possible.
+ * The data is read again on every pass instead of being kept in memory, a
+ * block of lines at a time, and the blocks are scored on a pool of threads.
+ * Only a few blocks per thread are read ahead, so memory stays the same
+ * however large the file is. The man weight is kept fixed so the scores stay
+ * in the same units, and each other weight moves by a step that grows while
+ * its gradient keeps its sign and shrinks when it changes (Rprop).
+ * Run with: java Tuner -in file [-out file] [-start file] [-iterations n]
+ * [-threads n] [-k scale]
+ * @author Michael Washburn <mdw@michaelwashburn.com>
+ *
+ */
+public class Tuner {
+
+	/* lines scored together by one task */
+	private static final int BLOCK = 4096;
+
+	/* blocks read ahead for each thread */
+	private static final int READ_AHEAD = 4;
+
+	/* how the step of a weight changes when its gradient keeps or changes sign */
+	private static final double GROW = 1.2;
+	private static final double SHRINK = 0.5;
+
+	/* smallest and largest step of a weight */
+	private static final double MIN_STEP = 0.01;
+	private static final double MAX_STEP = 50;
+
+	/**
+	 * The sums over part of the data, added together for the whole of it.
+	 */
+	static class Sums{
+		long count;//positions scored
+		double error;//sum of squared differences from the results
+		double[] gradient = new double[Evaluation.TERMS];//sum of the derivatives of error by each weight
+
+		/**
+		 * Add the sums of another part of the data.
+		 * @param other
+		 */
+		void add(Sums other){
+			count += other.count;
+			error += other.error;
+			for (int i = 0; i < gradient.length; i++){
+				gradient[i] += other.gradient[i];
+			}
+		}
+	}
+
+	private String path;//file of positions and results
+	private int threads;
+	private ExecutorService pool;
+
+	/**
+	 * Construct a new tuner.
+	 * @param path file of positions and results
+	 * @param threads
+	 */
+	public Tuner(String path, int threads){
+		this.path = path;
+		this.threads = threads;
+	}
+
+	/**
+	 * Find the scale of the logistic curve that best fits the results with
+	 * the given weights, by narrowing down the range it lies in.
+	 * @param weights
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public double fitScale(double[] weights) throws IOException, InterruptedException{
+		double low = 0.05;
+		double high = 4;
+		for (int i = 0; i < 12; i++){
+			double a = low + ((high - low) / 3);
+			double b = high - ((high - low) / 3);
+			if (pass(weights, a, false).error < pass(weights, b, false).error){
+				high = b;
+			}
+			else{
+				low = a;
+			}
+		}
+		return (low + high) / 2;
+	}
+
+	/**
+	 * Move the weights to fit the results better, for the given number of
+	 * passes over the data. The weights of the best pass are written to the
+	 * output file after every pass, so a long run can be stopped at any time.
+	 * @param weights starting weights, changed to the best found
+	 * @param scale scale of the logistic curve
+	 * @param iterations
+	 * @param out file to write the weights to
+	 * @return the mean squared error of the best weights
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public double tune(double[] weights, double scale, int iterations, String out)
+			throws IOException, InterruptedException{
+		double[] step = new double[Evaluation.TERMS];
+		double[] previous = new double[Evaluation.TERMS];
+		double[] best = weights.clone();
+		double bestError = Double.MAX_VALUE;
+		for (int i = 0; i < step.length; i++){
+			step[i] = 4;
+		}
+		for (int iteration = 1; iteration <= iterations; iteration++){
+			long start = System.nanoTime();
+			Sums sums = pass(weights, scale, true);
+			if (sums.count == 0){
+				throw new IllegalArgumentException("No positions in " + path);
+			}
+			double error = sums.error / sums.count;
+			if (error < bestError){
+				bestError = error;
+				best = weights.clone();
+				rounded(best).write(out);
+			}
+			System.out.println(String.format("pass %d: error %.6f over %d positions in %.1fs, %s", iteration, error,
+					sums.count, (System.nanoTime() - start) / 1e9, rounded(weights)));
+			//the man weight stays fixed so scores keep their units
+			for (int k = Evaluation.MAN + 1; k < Evaluation.TERMS; k++){
+				double gradient = sums.gradient[k];
+				if (gradient * previous[k] > 0){
+					step[k] = Math.min(step[k] * GROW, MAX_STEP);
+				}
+				else if (gradient * previous[k] < 0){
+					step[k] = Math.max(step[k] * SHRINK, MIN_STEP);
+					//skip this step so the sign change is not counted twice
+					gradient = 0;
+				}
+				weights[k] -= Math.signum(gradient) * step[k];
+				previous[k] = gradient;
+			}
+		}
+		System.arraycopy(best, 0, weights, 0, weights.length);
+		return bestError;
+	}
+
+	/**
+	 * Score every position in the data with the given weights.
+	 * @param weights
+	 * @param scale scale of the logistic curve
+	 * @param gradient if the gradient should be summed as well as the error
+	 * @return the sums over the whole data
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public Sums pass(final double[] weights, final double scale, final boolean gradient)
+			throws IOException, InterruptedException{
+		if (pool == null){
+			pool = Executors.newFixedThreadPool(threads);
+		}
+		Sums total = new Sums();
+		ArrayDeque<Future<Sums>> pending = new ArrayDeque<Future<Sums>>();
+		BufferedReader in = new BufferedReader(new FileReader(path));
+		try{
+			String[] block = new String[BLOCK];
+			int size = 0;
+			String line;
+			while (true){
+				line = in.readLine();
+				if ((line != null) && (line.trim().length() > 0)){
+					block[size++] = line;
+				}
+				if ((size == BLOCK) || ((line == null) && (size > 0))){
+					//add the oldest block before reading further ahead
+					if (pending.size() >= threads * READ_AHEAD){
+						total.add(pending.poll().get());
+					}
+					final String[] lines = block;
+					final int count = size;
+					pending.add(pool.submit(new Callable<Sums>(){
+						@Override
+						public Sums call(){
+							return score(lines, count, weights, scale, gradient);
+						}
+					}));
+					block = new String[BLOCK];
+					size = 0;
+				}
+				if (line == null){
+					break;
+				}
+			}
+			while (!pending.isEmpty()){
+				total.add(pending.poll().get());
+			}
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException(e.getCause());
+		}
+		finally{
+			in.close();
+		}
+		return total;
+	}
+
+	/**
+	 * Score a block of lines on the calling thread.
+	 * @param lines
+	 * @param count number of lines used
+	 * @param weights
+	 * @param scale
+	 * @param gradient if the gradient should be summed
+	 * @return the sums over the block
+	 */
+	private static Sums score(String[] lines, int count, double[] weights, double scale, boolean gradient){
+		Sums sums = new Sums();
+		int[] terms = new int[Evaluation.TERMS];
+		for (int i = 0; i < count; i++){
+			String[] fields = lines[i].trim().split("\\s+");
+			if (fields.length < 2){
+				throw new IllegalArgumentException("Expected a position and a result: " + lines[i]);
+			}
+			Bitboard board = Notation.parseFEN(fields[0]);
+			double result = Double.parseDouble(fields[1]);
+			Evaluation.terms(board, 1, terms);
+			double value = 0;
+			for (int k = 0; k < terms.length; k++){
+				value += weights[k] * terms[k];
+			}
+			double expected = expected(value, scale);
+			double difference = result - expected;
+			sums.error += difference * difference;
+			sums.count++;
+			if (gradient){
+				//derivative of the squared difference by each weight
+				double slope = -2 * difference * expected * (1 - expected) * Math.log(10) * scale / 400;
+				for (int k = 0; k < terms.length; k++){
+					sums.gradient[k] += slope * terms[k];
+				}
+			}
+		}
+		return sums;
+	}
+
+	/**
+	 * @param value evaluation for player 1
+	 * @param scale
+	 * @return the expected result for player 1, between 0 and 1
+	 */
+	public static double expected(double value, double scale){
+		return 1 / (1 + Math.pow(10, -scale * value / 400));
+	}
+
+	/**
+	 * @param weights
+	 * @return an evaluation with the weights rounded to whole numbers
+	 */
+	private static Evaluation rounded(double[] weights){
+		int[] whole = new int[weights.length];
+		for (int i = 0; i < weights.length; i++){
+			whole[i] = (int) Math.round(weights[i]);
+		}
+		return new Evaluation(whole);
+	}
+
+	/**
+	 * Stop the threads of the pool.
+	 */
+	public void close(){
+		if (pool != null){
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Tune weights from the command line.
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException{
+		String inPath = null;
+		String outPath = Evaluation.DEFAULT_FILE;
+		String startPath = null;
+		int iterations = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		double scale = 0;
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-in")){
+				inPath = args[++i];
+			}
+			else if (args[i].equals("-out")){
+				outPath = args[++i];
+			}
+			else if (args[i].equals("-start")){
+				startPath = args[++i];
+			}
+			else if (args[i].equals("-iterations")){
+				iterations = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-threads")){
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-k")){
+				scale = Double.parseDouble(args[++i]);
+			}
+		}
+		if (inPath == null){
+			System.err.println("Usage: java Tuner -in file [-out file] [-start file] [-iterations n] [-threads n] [-k scale]");
+			System.exit(1);
+		}
+		Evaluation start = (startPath == null) ? new Evaluation() : Evaluation.load(startPath);
+		int[] initial = start.getWeights();
+		double[] weights = new double[initial.length];
+		for (int i = 0; i < initial.length; i++){
+			weights[i] = initial[i];
+		}
+		Tuner tuner = new Tuner(inPath, threads);
+		try{
+			if (scale == 0){
+				scale = tuner.fitScale(weights);
+				System.out.println(String.format("scale %.4f", scale));
+			}
+			double error = tuner.tune(weights, scale, iterations, outPath);
+			System.out.println(String.format("best error %.6f, wrote %s to %s", error, rounded(weights), outPath));
+		}
+		finally{
+			tuner.close();
+		}
+	}
+
+}